@@ -0,0 +1,228 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams encoded tiles straight into a single ZIP or TAR archive, without any intermediate files.
+ * <p>
+ * The archive is written next to its final location with a {@code .part} suffix and only moved into place
+ * by {@link #close()}, so an archive with the final name is always complete. Entries are written in the order
+ * they are added, which on the {@link FonteoAPI.Engine#IN_JVM} engine is not necessarily the flattened order.
+ */
+public abstract class ArchiveWriter implements AutoCloseable {
+
+    private final Path target;
+    private final Path partial;
+    protected final OutputStream output;
+
+    private ArchiveWriter(File file) throws IOException {
+        this.target = file.toPath();
+        this.partial = target.resolveSibling(target.getFileName() + ".part");
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        this.output = new BufferedOutputStream(Files.newOutputStream(partial), 1 << 16);
+    }
+
+    /**
+     * @param compressionLevel deflate level of ZIP entries from 1 to 9, 0 stores them uncompressed; ignored by TAR
+     */
+    public static ArchiveWriter open(File file, FonteoAPI.OutputType type, int compressionLevel) throws IOException {
+        return switch (type) {
+            case ZIP -> new Zip(file, compressionLevel);
+            case TAR -> new Tar(file);
+            default -> throw new IllegalArgumentException("Not an archive output: " + type);
+        };
+    }
+
+    /**
+     * @return the archive the given output path stands for, which gets the type's extension unless it already has it
+     */
+    public static File getArchiveFile(File output, FonteoAPI.OutputType type) {
+        String extension = "." + type.name().toLowerCase();
+        return output.getName().toLowerCase().endsWith(extension) ? output : new File(output.getPath() + extension);
+    }
+
+    public synchronized void add(String name, byte[] data) throws IOException {
+        write(name, data);
+    }
+
+    protected abstract void write(String name, byte[] data) throws IOException;
+
+    protected abstract void finish() throws IOException;
+
+    /**
+     * Finishes the archive and moves it to its final location.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        finish();
+        output.close();
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Discards the partially written archive.
+     */
+    public synchronized void abort() {
+        try {
+            output.close();
+        } catch (IOException ignored) {
+        }
+
+        try {
+            Files.deleteIfExists(partial);
+        } catch (IOException e) {
+            System.out.println("Failed to delete partial archive: " + partial.getFileName());
+        }
+    }
+
+    private static class Zip extends ArchiveWriter {
+        private final ZipOutputStream zip;
+        private final boolean stored;
+
+        private Zip(File file, int compressionLevel) throws IOException {
+            super(file);
+            this.zip = new ZipOutputStream(output, StandardCharsets.UTF_8);
+            this.stored = compressionLevel <= 0;
+            if (!stored) {
+                zip.setLevel(Math.min(compressionLevel, Deflater.BEST_COMPRESSION));
+            }
+        }
+
+        @Override
+        protected void write(String name, byte[] data) throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+
+            if (stored) {
+                // Stored entries need their size and checksum up front, which saves the data descriptor after them.
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(data.length);
+                entry.setCompressedSize(data.length);
+                entry.setCrc(crc.getValue());
+            }
+
+            zip.putNextEntry(entry);
+            zip.write(data);
+            zip.closeEntry();
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            zip.finish();
+        }
+    }
+
+    /**
+     * POSIX ustar, with names of up to 100 bytes or split into a prefix of up to 155 bytes at a slash.
+     */
+    private static class Tar extends ArchiveWriter {
+        private static final int BLOCK = 512;
+
+        private final long mtime = System.currentTimeMillis() / 1000;
+
+        private Tar(File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        protected void write(String name, byte[] data) throws IOException {
+            byte[] header = new byte[BLOCK];
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+            if (nameBytes.length <= 100) {
+                System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+            } else {
+                int split = name.lastIndexOf('/', 155);
+                byte[] prefix = split > 0 ? name.substring(0, split).getBytes(StandardCharsets.UTF_8) : null;
+                byte[] rest = split > 0 ? name.substring(split + 1).getBytes(StandardCharsets.UTF_8) : null;
+                if (prefix == null || prefix.length > 155 || rest.length > 100) {
+                    throw new IOException("Name too long for a TAR entry: " + name);
+                }
+                System.arraycopy(rest, 0, header, 0, rest.length);
+                System.arraycopy(prefix, 0, header, 345, prefix.length);
+            }
+
+            putOctal(header, 100, 8, 0644);
+            putOctal(header, 108, 8, 0);
+            putOctal(header, 116, 8, 0);
+            putOctal(header, 124, 12, data.length);
+            putOctal(header, 136, 12, mtime);
+            header[156] = '0';
+            putString(header, 257, "ustar\0");
+            putString(header, 263, "00");
+
+            // The checksum is calculated with its own field filled with spaces.
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            long checksum = 0;
+            for (byte b : header) {
+                checksum += b & 0xFF;
+            }
+            putOctal(header, 148, 7, checksum);
+            header[155] = ' ';
+
+            output.write(header);
+            output.write(data);
+
+            int padding = (BLOCK - data.length % BLOCK) % BLOCK;
+            output.write(new byte[padding]);
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            output.write(new byte[BLOCK * 2]);
+        }
+
+        /**
+         * Writes the value as zero padded octal digits followed by a NUL into the field.
+         */
+        private static void putOctal(byte[] header, int offset, int length, long value) {
+            String octal = Long.toOctalString(value);
+            if (octal.length() > length - 1) {
+                throw new IllegalArgumentException("Value too large for a TAR header field: " + value);
+            }
+            putString(header, offset, "0".repeat(length - 1 - octal.length()) + octal);
+            header[offset + length - 1] = 0;
+        }
+
+        private static void putString(byte[] header, int offset, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(bytes, 0, header, offset, bytes.length);
+        }
+    }
+}
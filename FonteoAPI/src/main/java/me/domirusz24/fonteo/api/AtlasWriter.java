@@ -0,0 +1,226 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import lombok.Getter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Packs tiles into large sheet images instead of writing one file per tile.
+ * <p>
+ * Tiles are placed into consecutive cells in the order they arrive, a sheet is encoded as soon as all
+ * of its cells are filled. {@link #close()} writes the remaining sheets together with:
+ * <ul>
+ *     <li>{@value #INDEX_FILE}, a binary index of big-endian records {@code (int flattenedIndex, int sheet, short x, short y)}
+ *     sorted by flattened index, after a header of {@code (int magic, int version, int tileWidth, int tileHeight, int entries)},</li>
+ *     <li>{@value #METADATA_FILE}, describing the sheets and their layout.</li>
+ * </ul>
+ */
+public class AtlasWriter implements AutoCloseable {
+
+    public static final String INDEX_FILE = "atlas.index";
+    public static final String METADATA_FILE = "atlas.json";
+    public static final int INDEX_MAGIC = 0x4641544C;
+    public static final int INDEX_VERSION = 1;
+
+    private final File folder;
+    private final String extension;
+    private final int imageType;
+    @Getter
+    private final int tileWidth;
+    @Getter
+    private final int tileHeight;
+    @Getter
+    private final int sheetColumns;
+    @Getter
+    private final int sheetRows;
+
+    private final Map<Integer, Sheet> sheets = new ConcurrentHashMap<>();
+
+    private int nextSlot = 0;
+    private int[] slotIndices = new int[1024];
+
+    public AtlasWriter(File folder, String extension, int tileWidth, int tileHeight, int maxSheetSize) {
+        if (tileWidth > maxSheetSize || tileHeight > maxSheetSize) {
+            throw new IllegalArgumentException("Tiles of " + tileWidth + "x" + tileHeight + " do not fit into a sheet of " + maxSheetSize + "x" + maxSheetSize);
+        }
+        if (maxSheetSize > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Sheets can not be larger than " + Short.MAX_VALUE + " pixels");
+        }
+
+        this.folder = folder;
+        this.extension = extension;
+        this.imageType = new TileEncoder(extension).getImageType();
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.sheetColumns = maxSheetSize / tileWidth;
+        this.sheetRows = maxSheetSize / tileHeight;
+    }
+
+    public int getTilesPerSheet() {
+        return sheetColumns * sheetRows;
+    }
+
+    /**
+     * Copies the tile into the next free cell. May be called from several threads at once.
+     */
+    public void add(FrameTile tile, int flattenedIndex) throws IOException {
+        int slot = reserveSlot(flattenedIndex);
+        int sheetNumber = slot / getTilesPerSheet();
+        int cell = slot % getTilesPerSheet();
+
+        Sheet sheet = sheets.computeIfAbsent(sheetNumber, number -> new Sheet(new BufferedImage(sheetColumns * tileWidth, sheetRows * tileHeight, imageType)));
+
+        int[] data = ((DataBufferInt) sheet.image.getRaster().getDataBuffer()).getData();
+        int sheetWidth = sheet.image.getWidth();
+        int left = (cell % sheetColumns) * tileWidth;
+        int top = (cell / sheetColumns) * tileHeight;
+
+        for (int row = 0; row < tileHeight; row++) {
+            tile.copyRow(row, data, (top + row) * sheetWidth + left);
+        }
+
+        if (sheet.filled.incrementAndGet() == getTilesPerSheet()) {
+            writeSheet(sheetNumber, sheet.image);
+            sheets.remove(sheetNumber);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        int slots;
+        int[] indices;
+        synchronized (this) {
+            slots = nextSlot;
+            indices = slotIndices;
+        }
+
+        for (Map.Entry<Integer, Sheet> entry : sheets.entrySet()) {
+            int used = Math.min(getTilesPerSheet(), slots - entry.getKey() * getTilesPerSheet());
+            int usedRows = (used + sheetColumns - 1) / sheetColumns;
+            writeSheet(entry.getKey(), entry.getValue().image.getSubimage(0, 0, entry.getValue().image.getWidth(), usedRows * tileHeight));
+        }
+        sheets.clear();
+
+        writeIndex(slots, indices);
+        writeMetadata(slots);
+    }
+
+    public static String getSheetName(int sheet, String extension) {
+        return "atlas-" + sheet + "." + extension;
+    }
+
+    private synchronized int reserveSlot(int flattenedIndex) {
+        if (nextSlot == slotIndices.length) {
+            slotIndices = Arrays.copyOf(slotIndices, slotIndices.length * 2);
+        }
+        slotIndices[nextSlot] = flattenedIndex;
+        return nextSlot++;
+    }
+
+    private void writeSheet(int sheetNumber, BufferedImage image) throws IOException {
+        if (!ImageIO.write(image, extension, new File(folder, getSheetName(sheetNumber, extension)))) {
+            throw new IOException("Unable to encode sheet as " + extension);
+        }
+    }
+
+    private void writeIndex(int slots, int[] indices) throws IOException {
+        long[] entries = new long[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            entries[slot] = ((long) indices[slot] << 32) | slot;
+        }
+        Arrays.sort(entries);
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(folder, INDEX_FILE))))) {
+            output.writeInt(INDEX_MAGIC);
+            output.writeInt(INDEX_VERSION);
+            output.writeInt(tileWidth);
+            output.writeInt(tileHeight);
+            output.writeInt(slots);
+
+            for (long entry : entries) {
+                int slot = (int) entry;
+                int cell = slot % getTilesPerSheet();
+                output.writeInt((int) (entry >>> 32));
+                output.writeInt(slot / getTilesPerSheet());
+                output.writeShort((cell % sheetColumns) * tileWidth);
+                output.writeShort((cell / sheetColumns) * tileHeight);
+            }
+        }
+    }
+
+    private void writeMetadata(int slots) throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.tileWidth = tileWidth;
+        metadata.tileHeight = tileHeight;
+        metadata.sheetColumns = sheetColumns;
+        metadata.sheetRows = sheetRows;
+        metadata.tiles = slots;
+        metadata.index = INDEX_FILE;
+
+        int sheetAmount = (slots + getTilesPerSheet() - 1) / getTilesPerSheet();
+        for (int sheet = 0; sheet < sheetAmount; sheet++) {
+            metadata.sheets.add(getSheetName(sheet, extension));
+        }
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+        try (Writer writer = new FileWriter(new File(folder, METADATA_FILE), StandardCharsets.UTF_8)) {
+            gson.toJson(metadata, writer);
+        }
+    }
+
+    private static class Sheet {
+        private final BufferedImage image;
+        private final AtomicInteger filled = new AtomicInteger();
+
+        private Sheet(BufferedImage image) {
+            this.image = image;
+        }
+    }
+
+    private static class Metadata {
+        private int tileWidth;
+        private int tileHeight;
+        private int sheetColumns;
+        private int sheetRows;
+        private int tiles;
+        private String index;
+        private final List<String> sheets = new ArrayList<>();
+    }
+}
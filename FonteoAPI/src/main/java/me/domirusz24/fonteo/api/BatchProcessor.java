@@ -0,0 +1,239 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Processes many videos through one shared {@link TileScheduler}, so that a single global limit applies
+ * to the FFmpeg jobs of all of them and the videos take turns in its queue.
+ */
+public class BatchProcessor {
+
+    public static final List<String> VIDEO_EXTENSIONS = List.of(".mp4", ".mov");
+
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /**
+     * Resolves a batch input, which may be:
+     * <ul>
+     *     <li>a video file,</li>
+     *     <li>a directory, of which every video directly inside is used,</li>
+     *     <li>a glob such as {@code clips/**}{@code /*.mp4},</li>
+     *     <li>{@code @list.txt}, a file listing one of the above per line.</li>
+     * </ul>
+     */
+    public static List<File> findVideos(String input) throws IOException {
+        Set<File> videos = new LinkedHashSet<>();
+        findVideos(input, videos);
+        return new ArrayList<>(videos);
+    }
+
+    public static List<File> findVideos(List<String> inputs) throws IOException {
+        Set<File> videos = new LinkedHashSet<>();
+        for (String input : inputs) {
+            findVideos(input, videos);
+        }
+        return new ArrayList<>(videos);
+    }
+
+    private static void findVideos(String input, Set<File> videos) throws IOException {
+        if (input.startsWith("@")) {
+            for (String line : Files.readAllLines(Paths.get(input.substring(1)), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    findVideos(line, videos);
+                }
+            }
+            return;
+        }
+
+        int glob = indexOfGlob(input);
+        if (glob >= 0) {
+            int separator = Math.max(input.lastIndexOf('/', glob), input.lastIndexOf(File.separatorChar, glob));
+            Path base = Paths.get(separator < 0 ? "." : input.substring(0, separator + 1));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + (separator < 0 ? input : input.substring(separator + 1)));
+
+            try (Stream<Path> paths = Files.walk(base)) {
+                paths.filter(Files::isRegularFile)
+                        .filter(path -> matcher.matches(base.relativize(path)))
+                        .sorted()
+                        .forEach(path -> videos.add(path.toFile().getAbsoluteFile()));
+            }
+            return;
+        }
+
+        File file = new File(input).getAbsoluteFile();
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                Arrays.stream(files).filter(File::isFile).filter(BatchProcessor::isVideo).sorted().forEach(videos::add);
+            }
+        } else if (file.isFile()) {
+            videos.add(file);
+        } else {
+            System.out.println("No such video or directory: " + input);
+        }
+    }
+
+    private static int indexOfGlob(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(input.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static boolean isVideo(File file) {
+        String name = file.getName().toLowerCase();
+        return VIDEO_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    /**
+     * Processes every video into its own {@code <name>-frames} folder inside {@code output}.
+     * {@link ProcessOptions#getParallelism()} limits the FFmpeg jobs running at once across all videos.
+     */
+    public static Summary process(List<File> videos, File output, String format, String extension, int fps, int width, int height, int columns, int rows, FonteoAPI.FlattenVideoType flattenType, ProcessOptions options) {
+        return process(FonteoAPI.getInstance(), videos, output, format, extension, fps, width, height, columns, rows, flattenType, options);
+    }
+
+    /**
+     * Same as {@link #process(List, File, String, String, int, int, int, int, int, FonteoAPI.FlattenVideoType, ProcessOptions)}
+     * on the given engine instead of the default one.
+     */
+    public static Summary process(Fonteo fonteo, List<File> videos, File output, String format, String extension, int fps, int width, int height, int columns, int rows, FonteoAPI.FlattenVideoType flattenType, ProcessOptions options) {
+        Map<File, File> folders = getOutputFolders(videos, output);
+        List<VideoStats> stats = Collections.synchronizedList(new ArrayList<>());
+        Map<File, Throwable> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        long start = System.nanoTime();
+
+        int coordinators = Math.max(1, Math.min(videos.size(), options.getParallelism()));
+        AtomicInteger threadId = new AtomicInteger();
+        ExecutorService service = Executors.newFixedThreadPool(coordinators, runnable -> {
+            Thread thread = new Thread(runnable, "fonteo-batch-" + threadId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (TileScheduler scheduler = new TileScheduler(options.getParallelism(), options.getThreads(), true)) {
+            for (File video : videos) {
+                service.execute(() -> {
+                    try {
+                        stats.add(fonteo.processVideo(video, folders.get(video), format, extension, fps, width, height, columns, rows, flattenType, options, scheduler));
+                    } catch (RuntimeException e) {
+                        System.out.println("Failed to process " + video.getName() + ": " + e.getMessage());
+                        failures.put(video, e);
+                    }
+                });
+            }
+
+            service.shutdown();
+            service.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            service.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        return new Summary(new ArrayList<>(stats), new LinkedHashMap<>(failures), System.nanoTime() - start);
+    }
+
+    static Map<File, File> getOutputFolders(List<File> videos, File output) {
+        Map<File, File> folders = new LinkedHashMap<>();
+        Set<String> used = new HashSet<>();
+
+        for (File video : videos) {
+            String name = TileNaming.getVideoName(video) + "-frames";
+            String unique = name;
+            for (int i = 2; !used.add(unique); i++) {
+                unique = name + "-" + i;
+            }
+            folders.put(video, new File(output, unique));
+        }
+
+        return folders;
+    }
+
+    @Getter
+    public static class Summary {
+        private final List<VideoStats> videos;
+        private final Map<File, Throwable> failures;
+        private final long elapsedNanos;
+
+        public Summary(List<VideoStats> videos, Map<File, Throwable> failures, long elapsedNanos) {
+            this.videos = videos;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getFrames() {
+            return videos.stream().mapToLong(VideoStats::getFrames).sum();
+        }
+
+        public long getTiles() {
+            return videos.stream().mapToLong(VideoStats::getTiles).sum();
+        }
+
+        public void print(PrintStream out) {
+            out.println("Batch summary:");
+            for (VideoStats video : videos) {
+                if (video.isSkipped()) {
+                    out.printf("  %s: skipped, already processed\n", video.getVideo().getName());
+                } else {
+                    out.printf("  %s: %d frames, %d tiles in %.1fs (%.1f frames/s, %.1f tiles/s)\n",
+                            video.getVideo().getName(), video.getFrames(), video.getTiles(), video.getSeconds(), video.getFramesPerSecond(), video.getTilesPerSecond());
+                }
+            }
+            for (Map.Entry<File, Throwable> failure : failures.entrySet()) {
+                out.printf("  %s: failed, %s\n", failure.getKey().getName(), failure.getValue().getMessage());
+            }
+
+            double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            out.printf("Total: %d videos, %d failed, %d frames, %d tiles in %.1fs (%.1f frames/s, %.1f tiles/s)\n",
+                    videos.size() + failures.size(), failures.size(), getFrames(), getTiles(), seconds,
+                    seconds == 0 ? 0 : getFrames() / seconds, seconds == 0 ? 0 : getTiles() / seconds);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import java.io.IOException;
+
+/**
+ * Hands every tile to a user callback by its position, without exposing the frame buffer it was cut from.
+ */
+public class CallbackTileSink implements TileSink {
+
+    private final Callback callback;
+    private final boolean encoded;
+
+    /**
+     * @param encoded whether the callback receives encoded tiles, or ARGB pixels in row-major order
+     */
+    public CallbackTileSink(Callback callback, boolean encoded) {
+        this.callback = callback;
+        this.encoded = encoded;
+    }
+
+    public static CallbackTileSink encoded(Callback callback) {
+        return new CallbackTileSink(callback, true);
+    }
+
+    public static CallbackTileSink pixels(Callback callback) {
+        return new CallbackTileSink(callback, false);
+    }
+
+    @Override
+    public void accept(FrameTile tile, int index, byte[] data) throws IOException {
+        if (encoded) {
+            callback.accept(tile.getFrame(), tile.getX(), tile.getY(), index, data, null);
+        } else {
+            int[] pixels = new int[tile.getWidth() * tile.getHeight()];
+            tile.copyPixels(pixels);
+            callback.accept(tile.getFrame(), tile.getX(), tile.getY(), index, null, pixels);
+        }
+    }
+
+    @Override
+    public boolean isEncoded() {
+        return encoded;
+    }
+
+    @FunctionalInterface
+    public interface Callback {
+
+        /**
+         * @param data the encoded tile, null for a pixel callback
+         * @param pixels ARGB pixels of the tile in row-major order, null for an encoded callback
+         */
+        void accept(int frame, int x, int y, int index, byte[] data, int[] pixels) throws IOException;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import java.io.File;
+
+/**
+ * Prints progress to the console, the way Fonteo always has.
+ */
+public class ConsoleListener implements FonteoListener {
+
+    @Override
+    public void jobStarted(File video, FonteoAPI.Engine engine, int columns, int rows) {
+        System.out.println("Processing: " + video.getName() + " as " + columns + "x" + rows + " tiles");
+    }
+
+    @Override
+    public void tileStarted(File video, String tile) {
+        System.out.println("Doing: " + tile);
+    }
+
+    @Override
+    public void progress(File video, String tile, double percentage, double fps, double speed) {
+        System.out.printf("%s: %.0f%%\n", tile, percentage * 100);
+    }
+
+    @Override
+    public void notice(File video, String message) {
+        System.out.println(message);
+    }
+}
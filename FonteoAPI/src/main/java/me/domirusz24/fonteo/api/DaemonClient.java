@@ -0,0 +1,149 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Talks to a {@link FonteoDaemon} running on this machine, authenticated with the token in its {@link FonteoDaemon#getTokenFile(int) token file}.
+ */
+public class DaemonClient {
+
+    private static final Gson GSON = new Gson();
+
+    private final HttpClient client;
+    private final URI base;
+    private final File tokenFile;
+
+    public DaemonClient(int port) {
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(500))
+                .build();
+        this.base = URI.create("http://127.0.0.1:" + port);
+        this.tokenFile = FonteoDaemon.getTokenFile(port);
+    }
+
+    /**
+     * @return request to the path, carrying the token of the daemon currently running, if it could be read
+     */
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(base.resolve(path));
+        try {
+            builder.header("Authorization", "Bearer " + Files.readString(tokenFile.toPath(), StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            // Without a token the daemon refuses the request, just like when none is running.
+        }
+        return builder;
+    }
+
+    public boolean isRunning() {
+        try {
+            return client.send(request("/status").timeout(Duration.ofSeconds(1)).build(), HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return id of the queued job
+     */
+    public String submit(JobRequest request) throws IOException {
+        HttpRequest httpRequest = request("/jobs")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(request)))
+                .build();
+
+        return send(httpRequest).get("id").getAsString();
+    }
+
+    /**
+     * Cancels the job, killing its FFmpeg processes and removing its partial output.
+     *
+     * @return the state of the job, see {@link #getJob(String)}
+     */
+    public JsonObject cancel(String id) throws IOException {
+        return send(request("/jobs/" + id + "/cancel").header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.noBody()).build());
+    }
+
+    public JsonObject getJob(String id) throws IOException {
+        return send(request("/jobs/" + id).build());
+    }
+
+    /**
+     * Hands every event of the job to the consumer as it happens, until the job is done.
+     *
+     * @return the final state of the job, see {@link #getJob(String)}
+     */
+    public JsonObject streamEvents(String id, Consumer<JsonObject> events) throws IOException {
+        HttpResponse<Stream<String>> response;
+        try {
+            response = client.send(request("/jobs/" + id + "/events").build(), HttpResponse.BodyHandlers.ofLines());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        if (response.statusCode() != 200) {
+            throw new IOException("Daemon answered with " + response.statusCode());
+        }
+
+        try (Stream<String> lines = response.body()) {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                events.accept(GSON.fromJson(iterator.next(), JsonObject.class));
+            }
+        }
+
+        return getJob(id);
+    }
+
+    private JsonObject send(HttpRequest request) throws IOException {
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        JsonObject body = GSON.fromJson(response.body(), JsonObject.class);
+        if (response.statusCode() >= 400) {
+            throw new IOException("Daemon answered with " + response.statusCode() + ": " + (body != null && body.has("error") ? body.get("error").getAsString() : ""));
+        }
+        return body;
+    }
+}
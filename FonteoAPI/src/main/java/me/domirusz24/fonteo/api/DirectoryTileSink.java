@@ -0,0 +1,48 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Writes every tile to the file {@link TileNaming} names it, just like {@link FonteoAPI.OutputType#FILES} does without a sink.
+ */
+public class DirectoryTileSink implements TileSink {
+
+    @Getter
+    private final TileNaming naming;
+
+    public DirectoryTileSink(TileNaming naming) {
+        this.naming = naming;
+        naming.getFolder().mkdirs();
+    }
+
+    @Override
+    public void accept(FrameTile tile, int index, byte[] data) throws IOException {
+        Files.write(getFile(tile).toPath(), data);
+    }
+
+    public File getFile(FrameTile tile) {
+        return naming.getFile(tile.getFrame(), tile.getX(), tile.getY());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Builder;
+import lombok.Getter;
+import net.bramp.ffmpeg.builder.FFmpegOutputBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How tile images are encoded, trading encode time against output size.
+ * <p>
+ * FFmpeg engines pass the settings to the image encoder picked by the extension. The {@link FonteoAPI.Engine#IN_JVM}
+ * engine encodes with ImageIO, which only honours {@link #compressionLevel} and {@link #paletteColors}.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class EncodingProfile {
+
+    /**
+     * Encoder defaults, what every earlier version wrote.
+     */
+    public static final EncodingProfile DEFAULT = EncodingProfile.builder().build();
+    /**
+     * Cheapest png encoding, for previews and intermediate output.
+     */
+    public static final EncodingProfile FAST = EncodingProfile.builder().compressionLevel(1).prediction(Prediction.NONE).build();
+    /**
+     * Smallest true color png files.
+     */
+    public static final EncodingProfile SMALL = EncodingProfile.builder().compressionLevel(9).prediction(Prediction.MIXED).build();
+    /**
+     * Lossless webp, usually well below the size of png. Needs the {@code webp} extension and an FFmpeg with libwebp.
+     */
+    public static final EncodingProfile WEBP_LOSSLESS = EncodingProfile.builder().compressionLevel(6).lossless(true).build();
+    /**
+     * 256 color png with one palette shared by the whole video.
+     */
+    public static final EncodingProfile INDEXED = EncodingProfile.builder().compressionLevel(9).prediction(Prediction.MIXED).paletteColors(256).build();
+
+    /**
+     * Encoder effort from 0 to 9 for png and 0 to 6 for webp, -1 for the encoder's default.
+     */
+    @Builder.Default
+    private final int compressionLevel = -1;
+
+    /**
+     * Png row filter, null for the encoder's default.
+     */
+    private final Prediction prediction;
+
+    /**
+     * Whether webp is encoded losslessly.
+     */
+    private final boolean lossless;
+
+    /**
+     * Amount of palette entries from 2 to 256, 0 for true color. The palette is generated from the whole video
+     * in a first pass and shared by every tile, so a partial re-render uses the same colors as a full run.
+     * Colors are mapped to their nearest entry without dithering, which keeps identical pixels identical across tiles.
+     */
+    private final int paletteColors;
+
+    /**
+     * @return whether every setting is left to the encoder
+     */
+    public boolean isDefault() {
+        return compressionLevel < 0 && prediction == null && !lossless && paletteColors == 0;
+    }
+
+    public boolean isIndexed() {
+        return paletteColors > 0;
+    }
+
+    /**
+     * Checks that the profile can be encoded to images with the given extension.
+     */
+    public void validate(String extension) {
+        String format = extension.toLowerCase(Locale.ROOT);
+        boolean png = format.equals("png");
+        boolean webp = format.equals("webp");
+
+        if (prediction != null && !png) {
+            throw new IllegalArgumentException("Prediction is only supported by png, not " + extension);
+        }
+        if (lossless && !webp) {
+            throw new IllegalArgumentException("Lossless encoding is only supported by webp, not " + extension);
+        }
+        if (isIndexed() && !png && !format.equals("gif")) {
+            throw new IllegalArgumentException("Indexed color is only supported by png and gif, not " + extension);
+        }
+        if (paletteColors != 0 && (paletteColors < 2 || paletteColors > 256)) {
+            throw new IllegalArgumentException("Invalid amount of palette colors: " + paletteColors);
+        }
+        if (compressionLevel < -1 || compressionLevel > (webp ? 6 : 9)) {
+            throw new IllegalArgumentException("Invalid compression level for " + extension + ": " + compressionLevel);
+        }
+    }
+
+    /**
+     * Output options of an image2 output with the given extension.
+     */
+    public List<String> getOutputArgs(String extension) {
+        List<String> args = new ArrayList<>();
+        if (compressionLevel >= 0) {
+            args.add("-compression_level");
+            args.add(String.valueOf(compressionLevel));
+        }
+        if (prediction != null && extension.equalsIgnoreCase("png")) {
+            args.add("-pred");
+            args.add(prediction.name().toLowerCase(Locale.ROOT));
+        }
+        if (lossless) {
+            args.add("-lossless");
+            args.add("1");
+        }
+        return args;
+    }
+
+    /**
+     * Adds {@link #getOutputArgs(String)} to the output, which rejects an empty list of extra arguments.
+     */
+    public FFmpegOutputBuilder addOutputArgs(FFmpegOutputBuilder output, String extension) {
+        List<String> args = getOutputArgs(extension);
+        return args.isEmpty() ? output : output.addExtraArgs(args.toArray(new String[0]));
+    }
+
+    /**
+     * @return filter turning the scaled video into the palette written by the first pass
+     */
+    public String getPaletteGenFilter() {
+        return "palettegen=max_colors=" + paletteColors + ":stats_mode=full";
+    }
+
+    /**
+     * @return filter mapping its first input onto the palette of its second one
+     */
+    public String getPaletteUseFilter() {
+        return "paletteuse=dither=none";
+    }
+
+    /**
+     * @param name one of {@code default}, {@code fast}, {@code small}, {@code webp-lossless} and {@code indexed}
+     */
+    public static EncodingProfile preset(String name) {
+        return switch (name.toLowerCase(Locale.ROOT).replace('_', '-')) {
+            case "default" -> DEFAULT;
+            case "fast" -> FAST;
+            case "small" -> SMALL;
+            case "webp-lossless" -> WEBP_LOSSLESS;
+            case "indexed" -> INDEXED;
+            default -> throw new IllegalArgumentException("Unknown encoding profile: " + name);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "compression=" + compressionLevel + ",prediction=" + prediction + ",lossless=" + lossless + ",palette=" + paletteColors;
+    }
+
+    public enum Prediction {
+        NONE, SUB, UP, AVG, PAETH, MIXED
+    }
+}
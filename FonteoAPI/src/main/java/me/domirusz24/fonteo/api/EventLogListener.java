@@ -0,0 +1,193 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Appends every event as one JSON object per line, for example:
+ * <pre>{"time":1697620000000,"event":"tile","video":"a.mp4","tile":"x=0 and y=0","wallNanos":1200000,...}</pre>
+ * Events are "job_start", "tile_start", "progress", "tile", "phase", "notice", "job_end" and "job_failed".
+ * Progress is logged once per whole percent of every tile.
+ */
+public class EventLogListener implements FonteoListener, Closeable {
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final BufferedWriter writer;
+    private final Consumer<String> lines;
+    private final boolean logProgress;
+    private final Map<String, Integer> loggedProgress = new ConcurrentHashMap<>();
+
+    public EventLogListener(File file) throws IOException {
+        this(file, true);
+    }
+
+    /**
+     * @param logProgress whether to log progress events, which are by far the most frequent ones
+     */
+    public EventLogListener(File file, boolean logProgress) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        this.writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.lines = null;
+        this.logProgress = logProgress;
+    }
+
+    /**
+     * @param lines receives every event as a single line of JSON, without the line separator
+     */
+    public EventLogListener(Consumer<String> lines, boolean logProgress) {
+        this.writer = null;
+        this.lines = lines;
+        this.logProgress = logProgress;
+    }
+
+    @Override
+    public void jobStarted(File video, FonteoAPI.Engine engine, int columns, int rows) {
+        JsonObject event = event("job_start", video);
+        event.addProperty("engine", engine.name());
+        event.addProperty("columns", columns);
+        event.addProperty("rows", rows);
+        write(event);
+    }
+
+    @Override
+    public void tileStarted(File video, String tile) {
+        JsonObject event = event("tile_start", video);
+        event.addProperty("tile", tile);
+        write(event);
+    }
+
+    @Override
+    public void progress(File video, String tile, double percentage, double fps, double speed) {
+        if (!logProgress) {
+            return;
+        }
+
+        int percent = (int) (percentage * 100);
+        Integer last = loggedProgress.put(video.getPath() + "/" + tile, percent);
+        if (last != null && last == percent) {
+            return;
+        }
+
+        JsonObject event = event("progress", video);
+        event.addProperty("tile", tile);
+        event.addProperty("percentage", percentage);
+        event.addProperty("fps", fps);
+        event.addProperty("speed", speed);
+        write(event);
+    }
+
+    @Override
+    public void tileFinished(TileMetrics metrics) {
+        JsonObject event = event("tile", metrics.getVideo());
+        event.addProperty("tile", metrics.getTile());
+        event.addProperty("x", metrics.getX());
+        event.addProperty("y", metrics.getY());
+        event.addProperty("frames", metrics.getFrames());
+        event.addProperty("wallNanos", metrics.getWallNanos());
+        event.addProperty("queueWaitNanos", metrics.getQueueWaitNanos());
+        event.addProperty("bytesWritten", metrics.getBytesWritten());
+        event.addProperty("decodeFps", metrics.getDecodeFps());
+        event.addProperty("speed", metrics.getSpeed());
+        write(event);
+    }
+
+    @Override
+    public void phaseFinished(File video, String phase, long nanos) {
+        JsonObject event = event("phase", video);
+        event.addProperty("phase", phase);
+        event.addProperty("nanos", nanos);
+        write(event);
+    }
+
+    @Override
+    public void notice(File video, String message) {
+        JsonObject event = event("notice", video);
+        event.addProperty("message", message);
+        write(event);
+    }
+
+    @Override
+    public void jobFinished(VideoStats stats) {
+        JsonObject event = event("job_end", stats.getVideo());
+        event.addProperty("skipped", stats.isSkipped());
+        event.addProperty("frames", stats.getFrames());
+        event.addProperty("tiles", stats.getTiles());
+        event.addProperty("elapsedNanos", stats.getElapsedNanos());
+        event.addProperty("bytesWritten", stats.getBytesWritten());
+        event.addProperty("framesPerSecond", stats.getFramesPerSecond());
+        event.addProperty("tilesPerSecond", stats.getTilesPerSecond());
+        write(event);
+    }
+
+    @Override
+    public void jobFailed(File video, Throwable error) {
+        JsonObject event = event("job_failed", video);
+        event.addProperty("error", String.valueOf(error.getMessage()));
+        write(event);
+    }
+
+    private static JsonObject event(String type, File video) {
+        JsonObject event = new JsonObject();
+        event.addProperty("time", System.currentTimeMillis());
+        event.addProperty("event", type);
+        event.addProperty("video", video.getPath());
+        return event;
+    }
+
+    private synchronized void write(JsonObject event) {
+        if (lines != null) {
+            lines.accept(GSON.toJson(event));
+            return;
+        }
+
+        try {
+            writer.write(GSON.toJson(event));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            System.out.println("Failed to write event log: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Builder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps processing videos as they appear in, or change inside, a set of input folders, on one warm {@link Fonteo}.
+ * <p>
+ * A video is only queued once it has not been touched for {@code debounceMillis} and its size stayed the same,
+ * so files which are still being copied or uploaded are left alone. Queued videos are processed by a bounded
+ * pool of {@code workers}, whose FFmpeg jobs share one {@link TileScheduler} just like in a {@link BatchProcessor} run.
+ * When the queue is full, ready videos simply wait for the next check.
+ * <p>
+ * Every video is written to its own {@code <name>-frames} folder inside the output folder. A video whose
+ * {@link InputFingerprint} did not change since it was last processed is skipped, across restarts
+ * through the manifest of its folder.
+ */
+public class FolderWatcher implements AutoCloseable {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 2000;
+
+    private final Fonteo fonteo;
+    private final List<File> inputs;
+    private final File output;
+    private final String format;
+    private final String extension;
+    private final int fps;
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int rows;
+    private final FonteoAPI.FlattenVideoType flattenType;
+    private final ProcessOptions options;
+    private final long debounceMillis;
+
+    private final WatchService watchService;
+    private final TileScheduler scheduler;
+    private final ThreadPoolExecutor workerPool;
+    private final Thread watchThread;
+    private final Map<File, PendingVideo> pending = new ConcurrentHashMap<>();
+    private final Set<File> queued = ConcurrentHashMap.newKeySet();
+    private final Map<File, InputFingerprint> processed = new ConcurrentHashMap<>();
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    /**
+     * @param inputs folders to watch, videos directly inside of them are processed
+     * @param workers amount of videos processed at once, 0 for {@link ProcessOptions#getParallelism()}
+     * @param queueSize amount of ready videos waiting for a worker, 0 for twice the amount of workers
+     * @param debounceMillis quiet time before a new or changed video is queued, 0 for {@value #DEFAULT_DEBOUNCE_MILLIS}
+     */
+    @Builder
+    private FolderWatcher(Fonteo fonteo, List<File> inputs, File output, String format, String extension, int fps, int width, int height, int columns, int rows,
+                          FonteoAPI.FlattenVideoType flattenType, ProcessOptions options, int workers, int queueSize, long debounceMillis) throws IOException {
+        this.fonteo = Objects.requireNonNull(fonteo, "fonteo");
+        this.inputs = List.copyOf(inputs);
+        this.output = Objects.requireNonNull(output, "output");
+        this.format = format == null ? "%x-%y-%d" : format;
+        this.extension = extension == null ? "png" : extension;
+        this.fps = fps;
+        this.width = width;
+        this.height = height;
+        this.columns = columns;
+        this.rows = rows;
+        this.flattenType = flattenType;
+        this.options = options == null ? fonteo.getDefaults() : options;
+        this.debounceMillis = debounceMillis > 0 ? debounceMillis : DEFAULT_DEBOUNCE_MILLIS;
+
+        int workerCount = workers > 0 ? workers : this.options.getParallelism();
+        AtomicInteger threadId = new AtomicInteger();
+        this.workerPool = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize > 0 ? queueSize : workerCount * 2), runnable -> {
+            Thread thread = new Thread(runnable, "fonteo-watch-worker-" + threadId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = new TileScheduler(this.options.getParallelism(), this.options.getThreads(), true);
+
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (File input : this.inputs) {
+            if (!input.isDirectory()) {
+                close();
+                throw new IllegalArgumentException("Not a folder: " + input);
+            }
+            input.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+
+        this.watchThread = new Thread(this::watch, "fonteo-watch");
+        this.watchThread.setDaemon(true);
+    }
+
+    /**
+     * Queues every video already inside the input folders and starts watching them.
+     */
+    public void start() {
+        scanInputs();
+        watchThread.start();
+        System.out.println("Watching " + inputs.size() + " folder(s) for videos");
+    }
+
+    /**
+     * Blocks until the watcher is closed.
+     */
+    public void join() throws InterruptedException {
+        closed.await();
+    }
+
+    /**
+     * @return amount of videos waiting to settle, to be processed, or being processed
+     */
+    public int getBacklog() {
+        return pending.size() + queued.size();
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(Math.max(50, debounceMillis / 4), TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    Path folder = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Events were lost, look at everything again.
+                            scanInputs();
+                        } else {
+                            touch(folder.resolve((Path) event.context()).toFile());
+                        }
+                    }
+                    key.reset();
+                }
+
+                queueSettled();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed.
+        }
+    }
+
+    private void scanInputs() {
+        for (File input : inputs) {
+            File[] files = input.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    touch(file);
+                }
+            }
+        }
+    }
+
+    private void touch(File file) {
+        if (BatchProcessor.isVideo(file)) {
+            file = file.getAbsoluteFile();
+            pending.put(file, new PendingVideo(System.currentTimeMillis(), file.length(), file.lastModified()));
+        }
+    }
+
+    /**
+     * Queues every pending video that has not changed for the debounce time and is not being processed already.
+     */
+    private void queueSettled() {
+        long now = System.currentTimeMillis();
+
+        for (Iterator<Map.Entry<File, PendingVideo>> iterator = pending.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<File, PendingVideo> entry = iterator.next();
+            File video = entry.getKey();
+            PendingVideo last = entry.getValue();
+
+            if (!video.isFile()) {
+                iterator.remove();
+                continue;
+            }
+            if (now - last.seenMillis() < debounceMillis) {
+                continue;
+            }
+            if (video.length() != last.size() || video.lastModified() != last.lastModified()) {
+                // Still being written without the folder telling about it.
+                entry.setValue(new PendingVideo(now, video.length(), video.lastModified()));
+                continue;
+            }
+            if (video.length() == 0 || queued.contains(video)) {
+                // An empty placeholder, or a change made while the video is processed, which is looked at once it is done.
+                continue;
+            }
+
+            queued.add(video);
+            try {
+                workerPool.execute(() -> process(video));
+                iterator.remove();
+            } catch (RejectedExecutionException e) {
+                // Every worker is busy and the queue is full, try again on the next check.
+                queued.remove(video);
+                return;
+            }
+        }
+    }
+
+    private void process(File video) {
+        try {
+            InputFingerprint fingerprint = InputFingerprint.of(video);
+            if (fingerprint.equals(processed.get(video))) {
+                return;
+            }
+
+            File folder = new File(output, TileNaming.getVideoName(video) + "-frames");
+            VideoStats stats = fonteo.processVideo(video, folder, format, extension, fps, width, height, columns, rows, flattenType, options, scheduler);
+            processed.put(video, fingerprint);
+
+            if (!stats.isSkipped()) {
+                System.out.println("Processed " + video.getName() + " into " + folder.getName());
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Failed to process " + video.getName() + ": " + e.getMessage());
+        } finally {
+            queued.remove(video);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (watchThread != null) {
+            watchThread.interrupt();
+        }
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to stop watching: " + e.getMessage());
+        }
+        workerPool.shutdownNow();
+        scheduler.close();
+        closed.countDown();
+    }
+
+    private record PendingVideo(long seenMillis, long size, long lastModified) {
+    }
+}
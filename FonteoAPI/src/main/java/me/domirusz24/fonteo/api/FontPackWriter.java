@@ -0,0 +1,340 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.annotations.SerializedName;
+import lombok.Getter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the tiles as a Minecraft resource pack with a bitmap font, one glyph per tile, instead of one file per tile.
+ * <p>
+ * Every tile gets the codepoint {@link #getCodepoint(int)} of its flattened index, taken from the private use areas,
+ * and is drawn into the cell of that codepoint on one of a few large glyph textures. A texture is encoded as soon as
+ * all of its cells are filled. {@link #close()} writes the remaining textures together with:
+ * <ul>
+ *     <li>{@code assets/<namespace>/font/<font>.json}, the font's bitmap providers,</li>
+ *     <li>{@value #PACK_FILE}, so that the folder can be loaded as a resource pack,</li>
+ *     <li>{@value #METADATA_FILE}, describing which flattened indices got which codepoints.</li>
+ * </ul>
+ */
+public class FontPackWriter implements AutoCloseable {
+
+    public static final String PACK_FILE = "pack.mcmeta";
+    public static final String METADATA_FILE = "glyphs.json";
+
+    /**
+     * Private use areas the codepoints are assigned from, in order, as inclusive ranges.
+     */
+    private static final int[][] CODEPOINT_RANGES = {
+            {0xE000, 0xF8FF},
+            {0xF0000, 0xFFFFD},
+            {0x100000, 0x10FFFD}
+    };
+
+    private final File folder;
+    @Getter
+    private final String namespace;
+    @Getter
+    private final String fontName;
+    private final int packFormat;
+    @Getter
+    private final int tileWidth;
+    @Getter
+    private final int tileHeight;
+    @Getter
+    private final int sheetColumns;
+    @Getter
+    private final int sheetRows;
+
+    private final Map<Integer, Sheet> sheets = new ConcurrentHashMap<>();
+    private final AtomicInteger lastIndex = new AtomicInteger();
+
+    /**
+     * @param folder root folder of the resource pack
+     * @param fontName name of the font, which is also the prefix of its textures
+     */
+    public FontPackWriter(File folder, String namespace, String fontName, int packFormat, int tileWidth, int tileHeight, int maxSheetSize) {
+        if (tileWidth > maxSheetSize || tileHeight > maxSheetSize) {
+            throw new IllegalArgumentException("Tiles of " + tileWidth + "x" + tileHeight + " do not fit into a texture of " + maxSheetSize + "x" + maxSheetSize);
+        }
+
+        this.folder = folder;
+        this.namespace = getResourceName(namespace);
+        this.fontName = getResourceName(fontName);
+        this.packFormat = packFormat;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.sheetColumns = maxSheetSize / tileWidth;
+        this.sheetRows = maxSheetSize / tileHeight;
+    }
+
+    /**
+     * @return the name with everything a resource location does not allow replaced by {@code _}
+     */
+    public static String getResourceName(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9_.-]", "_");
+    }
+
+    /**
+     * @param flattenedIndex index of the tile in the flattened sequence, starting at 1
+     * @return the codepoint of the glyph drawn for the tile
+     */
+    public static int getCodepoint(int flattenedIndex) {
+        int offset = flattenedIndex - 1;
+        for (int[] range : CODEPOINT_RANGES) {
+            int size = range[1] - range[0] + 1;
+            if (offset < size) {
+                return range[0] + offset;
+            }
+            offset -= size;
+        }
+        throw new IllegalArgumentException("No private use codepoint left for tile " + flattenedIndex);
+    }
+
+    public int getTilesPerSheet() {
+        return sheetColumns * sheetRows;
+    }
+
+    /**
+     * @return the font's id, as used in a text component's {@code font} field
+     */
+    public String getFontId() {
+        return namespace + ":" + fontName;
+    }
+
+    /**
+     * Draws the tile into the cell of its codepoint. May be called from several threads at once.
+     */
+    public void add(FrameTile tile, int flattenedIndex) throws IOException {
+        getCodepoint(flattenedIndex);
+        lastIndex.accumulateAndGet(flattenedIndex, Math::max);
+
+        int sheetNumber = (flattenedIndex - 1) / getTilesPerSheet();
+        int cell = (flattenedIndex - 1) % getTilesPerSheet();
+
+        Sheet sheet = sheets.computeIfAbsent(sheetNumber, number -> new Sheet(new BufferedImage(sheetColumns * tileWidth, sheetRows * tileHeight, BufferedImage.TYPE_INT_ARGB)));
+
+        int[] data = ((DataBufferInt) sheet.image.getRaster().getDataBuffer()).getData();
+        int sheetWidth = sheet.image.getWidth();
+        int left = (cell % sheetColumns) * tileWidth;
+        int top = (cell / sheetColumns) * tileHeight;
+
+        for (int row = 0; row < tileHeight; row++) {
+            tile.copyRow(row, data, (top + row) * sheetWidth + left);
+        }
+
+        if (sheet.filled.incrementAndGet() == getTilesPerSheet()) {
+            writeSheet(sheetNumber, sheet.image);
+            sheets.remove(sheetNumber);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        int tiles = lastIndex.get();
+
+        for (Map.Entry<Integer, Sheet> entry : sheets.entrySet()) {
+            writeSheet(entry.getKey(), entry.getValue().image.getSubimage(0, 0, entry.getValue().image.getWidth(), getUsedRows(entry.getKey(), tiles) * tileHeight));
+        }
+        sheets.clear();
+
+        writeFont(tiles);
+        writePack();
+        writeMetadata(tiles);
+    }
+
+    public String getSheetName(int sheet) {
+        return fontName + "-" + sheet + ".png";
+    }
+
+    private int getUsedRows(int sheet, int tiles) {
+        int used = Math.min(getTilesPerSheet(), tiles - sheet * getTilesPerSheet());
+        return (used + sheetColumns - 1) / sheetColumns;
+    }
+
+    private File getAssetFile(String type, String name) {
+        File file = new File(folder, "assets/" + namespace + "/" + type + "/" + name);
+        file.getParentFile().mkdirs();
+        return file;
+    }
+
+    private void writeSheet(int sheetNumber, BufferedImage image) throws IOException {
+        if (!ImageIO.write(image, "png", getAssetFile("textures/font", getSheetName(sheetNumber)))) {
+            throw new IOException("Unable to encode glyph texture as png");
+        }
+    }
+
+    /**
+     * Writes one bitmap provider per texture. Every row of a provider's {@code chars} lists the codepoints of
+     * a row of cells, cells without a tile get U+0000, which is never rendered.
+     */
+    private void writeFont(int tiles) throws IOException {
+        Font font = new Font();
+        int sheetAmount = (tiles + getTilesPerSheet() - 1) / getTilesPerSheet();
+
+        for (int sheet = 0; sheet < sheetAmount; sheet++) {
+            Provider provider = new Provider();
+            provider.file = namespace + ":font/" + getSheetName(sheet);
+            provider.height = tileHeight;
+            provider.ascent = tileHeight;
+
+            for (int row = 0; row < getUsedRows(sheet, tiles); row++) {
+                StringBuilder chars = new StringBuilder();
+                for (int column = 0; column < sheetColumns; column++) {
+                    int index = sheet * getTilesPerSheet() + row * sheetColumns + column + 1;
+                    chars.appendCodePoint(index <= tiles ? getCodepoint(index) : 0);
+                }
+                provider.chars.add(chars.toString());
+            }
+
+            font.providers.add(provider);
+        }
+
+        String json = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(font);
+
+        try (Writer writer = new FileWriter(getAssetFile("font", fontName + ".json"), StandardCharsets.UTF_8)) {
+            writer.write(escapeNonAscii(json));
+        }
+    }
+
+    /**
+     * Private use characters are invisible in any editor, so they are written as unicode escapes like in the game's own fonts.
+     */
+    private static String escapeNonAscii(String json) {
+        StringBuilder escaped = new StringBuilder(json.length());
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c < 0x20 && c != '\n' || c > 0x7E) {
+                escaped.append(String.format("\\u%04X", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private void writePack() throws IOException {
+        File file = new File(folder, PACK_FILE);
+        if (file.exists()) {
+            return;
+        }
+
+        Pack pack = new Pack();
+        pack.pack.packFormat = packFormat;
+        pack.pack.description = "Fonteo font " + getFontId();
+
+        try (Writer writer = new FileWriter(file, StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(pack, writer);
+        }
+    }
+
+    private void writeMetadata(int tiles) throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.font = getFontId();
+        metadata.tileWidth = tileWidth;
+        metadata.tileHeight = tileHeight;
+        metadata.tiles = tiles;
+
+        int first = 1;
+        for (int[] range : CODEPOINT_RANGES) {
+            if (first > tiles) {
+                break;
+            }
+            int last = Math.min(tiles, first + range[1] - range[0]);
+            metadata.ranges.add(new Range(first, last, String.format("U+%04X", range[0]), String.format("U+%04X", getCodepoint(last))));
+            first = last + 1;
+        }
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+        try (Writer writer = new FileWriter(new File(folder, METADATA_FILE), StandardCharsets.UTF_8)) {
+            gson.toJson(metadata, writer);
+        }
+    }
+
+    private static class Sheet {
+        private final BufferedImage image;
+        private final AtomicInteger filled = new AtomicInteger();
+
+        private Sheet(BufferedImage image) {
+            this.image = image;
+        }
+    }
+
+    private static class Font {
+        private final List<Provider> providers = new ArrayList<>();
+    }
+
+    private static class Provider {
+        private final String type = "bitmap";
+        private String file;
+        private int height;
+        private int ascent;
+        private final List<String> chars = new ArrayList<>();
+    }
+
+    private static class Pack {
+        private final PackInfo pack = new PackInfo();
+    }
+
+    private static class PackInfo {
+        @SerializedName("pack_format")
+        private int packFormat;
+        private String description;
+    }
+
+    private static class Metadata {
+        private String font;
+        private int tileWidth;
+        private int tileHeight;
+        private int tiles;
+        private final List<Range> ranges = new ArrayList<>();
+    }
+
+    private static class Range {
+        private final int firstIndex;
+        private final int lastIndex;
+        private final String firstCodepoint;
+        private final String lastCodepoint;
+
+        private Range(int firstIndex, int lastIndex, String firstCodepoint, String lastCodepoint) {
+            this.firstIndex = firstIndex;
+            this.lastIndex = lastIndex;
+            this.firstCodepoint = firstCodepoint;
+            this.lastCodepoint = lastCodepoint;
+        }
+    }
+}
@@ -0,0 +1,608 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import me.domirusz24.fonteo.api.FonteoAPI.Engine;
+import me.domirusz24.fonteo.api.FonteoAPI.FlattenVideoType;
+import me.domirusz24.fonteo.api.FonteoAPI.OutputType;
+import me.domirusz24.fonteo.api.FonteoAPI.Sampling;
+import net.bramp.ffmpeg.FFmpeg;
+import net.bramp.ffmpeg.FFmpegExecutor;
+import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.job.FFmpegJob;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * An immutable Fonteo engine with its own FFmpeg executables, probe cache and default {@link ProcessOptions}.
+ * Any amount of them can be used side by side, from any amount of threads. Every call runs its FFmpeg jobs
+ * and encoders on worker threads of its own, sized by the options it is called with.
+ * <pre>
+ * Fonteo fonteo = Fonteo.builder()
+ *         .ffmpeg(new FFmpeg("/usr/bin/ffmpeg"))
+ *         .ffprobe(new FFprobe("/usr/bin/ffprobe"))
+ *         .build();
+ * </pre>
+ * {@link FonteoAPI} is a facade over a default instance.
+ */
+@Getter
+public class Fonteo {
+
+    private static final AtomicInteger JOB_THREADS = new AtomicInteger();
+
+    private final FFmpeg ffmpeg;
+    private final FFprobe ffprobe;
+    @Getter(AccessLevel.NONE)
+    private final FFmpegExecutor executor;
+    /**
+     * Cache probed videos are looked up in, null to always run ffprobe.
+     */
+    private final ProbeCache probeCache;
+    /**
+     * Cache of scaled inputs {@link #processVideo} reads from instead of decoding the input again, null to always decode it.
+     */
+    private final ProxyCache proxyCache;
+    /**
+     * Options of every call which does not pass its own.
+     */
+    private final ProcessOptions defaults;
+
+    /**
+     * @param defaults null for {@link ProcessOptions#defaults()}
+     */
+    @Builder(toBuilder = true)
+    private Fonteo(FFmpeg ffmpeg, FFprobe ffprobe, ProbeCache probeCache, ProxyCache proxyCache, ProcessOptions defaults) {
+        this.ffmpeg = Objects.requireNonNull(ffmpeg, "ffmpeg");
+        this.ffprobe = Objects.requireNonNull(ffprobe, "ffprobe");
+        this.executor = new FFmpegExecutor(getTrackedFFmpeg(ffmpeg), ffprobe);
+        this.probeCache = probeCache;
+        this.proxyCache = proxyCache;
+        this.defaults = defaults == null ? ProcessOptions.defaults() : defaults;
+    }
+
+    /**
+     * @return an FFmpeg at the same path whose processes are killed when the job they run for is cancelled
+     */
+    private static FFmpeg getTrackedFFmpeg(FFmpeg ffmpeg) {
+        try {
+            return new FFmpeg(ffmpeg.getPath(), new TrackingProcessFunction());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public FFmpegProbeResult probe(File video) throws IOException {
+        if (probeCache == null) {
+            return ffprobe.probe(video.getAbsolutePath());
+        }
+        return probeCache.probe(ffprobe, video);
+    }
+
+    /**
+     * Opens the tile store written by {@link OutputType#STORE}, the reader should be closed once done with.
+     *
+     * @param output the output folder the job was given, with or without the {@value TileStore#EXTENSION} extension
+     */
+    public TileStore openStore(File output) throws IOException {
+        return TileStore.open(TileStoreWriter.getStoreFile(output));
+    }
+
+    public VideoStats processVideo(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows) {
+        return processVideo(video, folder, format, extension, fps, width, height, columns, rows, null);
+    }
+
+    public VideoStats processVideo(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows, FlattenVideoType flattenType) {
+        return processVideo(video, folder, format, extension, fps, width, height, columns, rows, flattenType, defaults);
+    }
+
+    public VideoStats processVideo(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows, FlattenVideoType flattenType, ProcessOptions options) {
+        try (TileScheduler scheduler = new TileScheduler(options.getParallelism(), options.getThreads())) {
+            return processVideo(video, folder, format, extension, fps, width, height, columns, rows, flattenType, options, scheduler);
+        }
+    }
+
+    /**
+     * Processes the video with its FFmpeg jobs running on the given, possibly shared, scheduler.
+     */
+    VideoStats processVideo(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows, FlattenVideoType flattenType, ProcessOptions options, TileScheduler scheduler) {
+        long start = System.nanoTime();
+
+        if (flattenType != null) {
+            format = "%x-%y-%d";
+        }
+
+        TileNaming naming = new TileNaming(folder, format, extension, video, columns, rows, flattenType);
+
+        TileSelection selection = options.getSelection();
+        selection.validate(columns, rows);
+
+        EncodingProfile encoding = options.getEncoding();
+        encoding.validate(extension);
+        if (!encoding.isDefault() && !isEncodingTiles(options)) {
+            throw new IllegalArgumentException("Encoding profiles only apply to outputs writing tile images, not " + options.getOutput());
+        }
+        if (options.getSink() != null && (options.getOutput() != OutputType.FILES || options.isDeduplicate())) {
+            throw new IllegalArgumentException("A tile sink receives every tile in place of files, it can not be combined with " + (options.isDeduplicate() ? "deduplication" : options.getOutput() + " output"));
+        }
+
+        // Only a folder this job starts from scratch is removed again when the job is cancelled.
+        String[] existing = folder.list();
+        boolean freshFolder = !options.getOutput().isSingleFile() && options.getSink() == null && (existing == null || existing.length == 0);
+
+        JobManifest manifest;
+        try {
+            Map<String, String> parameters = getManifestParameters(naming, fps, width, height, options);
+
+            if (options.getOutput().isSingleFile() || options.getSink() != null) {
+                // A half written output file is started over, and whatever a sink did is out of sight.
+                manifest = JobManifest.inMemory(InputFingerprint.of(video), parameters);
+            } else {
+                folder.delete();
+                folder.mkdirs();
+                // Partial runs are merged into the folder of a full run, whose manifest they leave alone.
+                manifest = selection.isPartial()
+                        ? JobManifest.inMemory(InputFingerprint.of(video), parameters)
+                        : JobManifest.open(folder, InputFingerprint.of(video), parameters);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        StatsCollector collector = new StatsCollector();
+        FonteoListener listener = FonteoListener.of(new JfrListener(), options.getListener(), collector);
+
+        if (manifest.isCompleted(JobManifest.WHOLE_JOB)) {
+            listener.notice(video, "Already processed: " + video.getName());
+            VideoStats stats = VideoStats.skipped(video);
+            listener.jobFinished(stats);
+            return stats;
+        } else if (!manifest.isEmpty()) {
+            listener.notice(video, "Resuming interrupted job: " + video.getName());
+        }
+
+        listener.jobStarted(video, options.getEngine(), columns, rows);
+
+        File palette = null;
+        ProxyCache.Lease proxy = null;
+        try {
+            long probeStart = System.nanoTime();
+            listener.phaseStarted(video, "probe");
+            FFmpegProbeResult source;
+            try {
+                source = probe(video);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            listener.phaseFinished(video, "probe", System.nanoTime() - probeStart);
+
+            Sampling sampling = SegmentPlanner.getSampling(ffprobe, video, source, fps, options, listener);
+
+            // A proxy already holds the sampled frames, every one of them is read.
+            FFmpegProbeResult in = source;
+            File input = video;
+            proxy = openProxy(video, source, fps, width, height, sampling, selection, listener);
+            if (proxy != null) {
+                try {
+                    in = ffprobe.probe(proxy.getFile().getAbsolutePath());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                input = proxy.getFile();
+                sampling = Sampling.EXACT;
+            }
+
+            if (encoding.isIndexed()) {
+                palette = generatePalette(video, in, fps, width, height, encoding, listener);
+            }
+
+            if (options.getEngine() == Engine.IN_JVM || options.getOutput() != OutputType.FILES || options.isDeduplicate() || options.getSink() != null) {
+                new InJvmTileWriter(ffmpeg).process(video, in, naming, fps, width, height, options, sampling, palette, scheduler, manifest, listener);
+            } else {
+                List<VideoSegment> segments = selection.restrict(SegmentPlanner.getSegments(ffprobe, video, input, in, fps, selection.getTileCount(columns, rows), options, sampling, listener), fps);
+
+                // untile always emits every tile of a frame, flattened names of a few tiles are only produced by renaming them.
+                boolean singlePass = options.getEngine() == Engine.SINGLE_PASS && (selection.isAllTiles() || flattenType == null);
+
+                if (segments.isEmpty()) {
+                    listener.notice(video, "No selected frames in " + video.getName());
+                } else if (singlePass) {
+                    try {
+                        new SinglePassEngine(executor).process(video, in, naming, fps, width, height, encoding, palette, scheduler, selection, segments, listener);
+                    } catch (RuntimeException e) {
+                        if (isCancelled()) {
+                            throw e;
+                        }
+                        listener.notice(video, "Single-pass processing failed, falling back to per-tile jobs: " + e.getMessage());
+                        new PerTileEngine(executor).process(video, in, naming, fps, width, height, encoding, palette, scheduler, manifest, selection, segments, listener);
+                    }
+                } else {
+                    new PerTileEngine(executor).process(video, in, naming, fps, width, height, encoding, palette, scheduler, manifest, selection, segments, listener);
+                }
+            }
+
+            manifest.complete(JobManifest.WHOLE_JOB);
+
+            VideoStats stats = new VideoStats(video, false, collector.getFrames(), collector.getTiles(selection.getTileCount(columns, rows)), System.nanoTime() - start, collector.getBytesWritten(), collector.getPhaseNanos());
+            listener.jobFinished(stats);
+            return stats;
+        } catch (RuntimeException e) {
+            if (isCancelled() && freshFolder) {
+                deleteRecursively(folder);
+                listener.notice(video, "Cancelled " + video.getName() + ", removed " + folder.getName());
+            } else {
+                manifest.flush();
+                if (isCancelled()) {
+                    listener.notice(video, "Cancelled " + video.getName() + ", a rerun resumes where it stopped");
+                }
+            }
+            listener.jobFailed(video, e);
+            throw e;
+        } finally {
+            if (palette != null) {
+                palette.delete();
+            }
+            if (proxy != null) {
+                proxy.close();
+            }
+        }
+    }
+
+    /**
+     * Produces every grid from a single decode of the video, each grid written to its own folder with its own manifest.
+     * <p>
+     * Only the {@link Engine#SINGLE_PASS} engine writing loose true color files with {@link Sampling#EXACT} or {@link Sampling#KEYFRAMES}
+     * shares a decode, which always reads the video as a whole. Other options process the grids one by one, like separate {@link #processVideo} calls.
+     *
+     * @return stats of every grid, in the given order
+     */
+    public List<VideoStats> processGrids(File video, String format, String extension, List<GridSpec> grids, ProcessOptions options) {
+        try (TileScheduler scheduler = new TileScheduler(options.getParallelism(), options.getThreads())) {
+            boolean sharedDecode = options.getEngine() == Engine.SINGLE_PASS && options.getOutput() == OutputType.FILES && !options.isDeduplicate()
+                    && !options.getSelection().isPartial() && !options.getEncoding().isIndexed()
+                    && (options.getSampling() == Sampling.EXACT || options.getSampling() == Sampling.KEYFRAMES);
+
+            if (!sharedDecode || grids.size() == 1) {
+                if (grids.size() > 1) {
+                    options.getListener().notice(video, "Processing the grids of " + video.getName() + " one by one, the options do not allow a shared decode");
+                }
+                return processEachGrid(video, format, extension, grids, options, scheduler);
+            }
+            return processGrids(video, format, extension, grids, options, scheduler);
+        }
+    }
+
+    private List<VideoStats> processEachGrid(File video, String format, String extension, List<GridSpec> grids, ProcessOptions options, TileScheduler scheduler) {
+        List<VideoStats> stats = new ArrayList<>(grids.size());
+        for (GridSpec grid : grids) {
+            stats.add(processVideo(video, grid.getFolder(), format, extension, grid.getFps(), grid.getWidth(), grid.getHeight(), grid.getColumns(), grid.getRows(), grid.getFlattenType(), options, scheduler));
+        }
+        return stats;
+    }
+
+    private List<VideoStats> processGrids(File video, String format, String extension, List<GridSpec> grids, ProcessOptions options, TileScheduler scheduler) {
+        long start = System.nanoTime();
+        options.getEncoding().validate(extension);
+
+        StatsCollector collector = new StatsCollector();
+        FonteoListener listener = FonteoListener.of(new JfrListener(), options.getListener(), collector);
+
+        VideoStats[] stats = new VideoStats[grids.size()];
+        FonteoListener[] jobListeners = new FonteoListener[grids.size()];
+        List<Integer> pending = new ArrayList<>();
+        TileNaming[] namings = new TileNaming[grids.size()];
+        JobManifest[] manifests = new JobManifest[grids.size()];
+        boolean[] freshFolders = new boolean[grids.size()];
+
+        for (int i = 0; i < grids.size(); i++) {
+            GridSpec grid = grids.get(i);
+            File folder = grid.getFolder();
+            namings[i] = new TileNaming(folder, grid.getFlattenType() != null ? "%x-%y-%d" : format, extension, video, grid.getColumns(), grid.getRows(), grid.getFlattenType());
+
+            String[] existing = folder.list();
+            freshFolders[i] = existing == null || existing.length == 0;
+            // Each grid is a job of its own, with JFR events of its own.
+            jobListeners[i] = FonteoListener.of(new JfrListener(), options.getListener(), collector);
+
+            try {
+                folder.delete();
+                folder.mkdirs();
+                manifests[i] = JobManifest.open(folder, InputFingerprint.of(video), getManifestParameters(namings[i], grid.getFps(), grid.getWidth(), grid.getHeight(), options));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            if (manifests[i].isCompleted(JobManifest.WHOLE_JOB)) {
+                listener.notice(video, "Already processed: " + video.getName() + " at " + grid);
+                stats[i] = VideoStats.skipped(video);
+                jobListeners[i].jobFinished(stats[i]);
+            } else {
+                pending.add(i);
+                jobListeners[i].jobStarted(video, options.getEngine(), grid.getColumns(), grid.getRows());
+            }
+        }
+
+        if (pending.isEmpty()) {
+            return List.of(stats);
+        }
+
+        try {
+            long probeStart = System.nanoTime();
+            listener.phaseStarted(video, "probe");
+            FFmpegProbeResult in;
+            try {
+                in = probe(video);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            listener.phaseFinished(video, "probe", System.nanoTime() - probeStart);
+
+            String threads = String.valueOf(scheduler.getThreadsPerJob(1));
+            VideoSegment whole = options.getSampling() == Sampling.KEYFRAMES ? VideoSegment.whole().withKeyframesOnly() : VideoSegment.whole();
+            FFmpegBuilder builder = whole.addInputArgs(new FFmpegBuilder().addExtraArgs("-threads", threads, "-filter_complex_threads", threads), 0)
+                    .setInput(in);
+
+            StringBuilder filter = new StringBuilder("[0:v]split=").append(pending.size());
+            for (int i : pending) {
+                filter.append("[d").append(i).append("]");
+            }
+            for (int i : pending) {
+                GridSpec grid = grids.get(i);
+                filter.append(";");
+                SinglePassEngine.appendChain(builder, filter, "[d" + i + "]", "g" + i, in, namings[i], grid.getFps(), grid.getWidth(), grid.getHeight(),
+                        options.getEncoding(), null, threads, TileSelection.ALL, whole);
+            }
+            builder.setComplexFilter(filter.toString());
+
+            TileProgress progress = new TileProgress(video, in.getFormat().duration, "all grids", listener);
+            FFmpegJob job = executor.createJob(builder, progress);
+
+            scheduler.run(List.of(() -> {
+                long started = System.nanoTime();
+                listener.tileStarted(video, "all grids");
+                job.run();
+
+                long bytes = 0;
+                for (int i : pending) {
+                    bytes += WrittenTiles.of(namings[i]).bytes();
+                }
+                listener.tileFinished(progress.getMetrics(-1, -1, System.nanoTime() - started, 0, bytes));
+            }));
+
+            long elapsed = System.nanoTime() - start;
+            for (int i : pending) {
+                GridSpec grid = grids.get(i);
+                manifests[i].complete(JobManifest.WHOLE_JOB);
+
+                WrittenTiles written = WrittenTiles.of(namings[i]);
+                stats[i] = new VideoStats(video, false, written.images() / (grid.getColumns() * grid.getRows()), written.images(), elapsed, written.bytes(), collector.getPhaseNanos());
+                jobListeners[i].jobFinished(stats[i]);
+            }
+            return List.of(stats);
+        } catch (RuntimeException e) {
+            if (isCancelled()) {
+                for (int i : pending) {
+                    if (freshFolders[i]) {
+                        deleteRecursively(grids.get(i).getFolder());
+                    }
+                    jobListeners[i].jobFailed(video, e);
+                }
+                listener.notice(video, "Cancelled " + video.getName());
+                throw e;
+            }
+            listener.notice(video, "Shared decode failed, processing the grids of " + video.getName() + " one by one: " + e.getMessage());
+        }
+
+        // Every grid reports its own outcome from here on, just like separate calls would.
+        List<GridSpec> remaining = new ArrayList<>();
+        for (int i : pending) {
+            remaining.add(grids.get(i));
+        }
+        List<VideoStats> fallback = processEachGrid(video, format, extension, remaining, options, scheduler);
+        for (int i = 0; i < pending.size(); i++) {
+            stats[pending.get(i)] = fallback.get(i);
+        }
+        return List.of(stats);
+    }
+
+    /**
+     * Processes the video in the background, with its FFmpeg jobs running on a scheduler of its own.
+     * The job runs on a thread of its own, use the overload taking an {@link Executor} to run it elsewhere.
+     */
+    public FonteoJob submit(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows, FlattenVideoType flattenType, ProcessOptions options) {
+        return submit(video, folder, format, extension, fps, width, height, columns, rows, flattenType, options,
+                runnable -> new Thread(runnable, "fonteo-job-" + JOB_THREADS.getAndIncrement()).start());
+    }
+
+    public FonteoJob submit(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows, FlattenVideoType flattenType, ProcessOptions options, Executor executor) {
+        FonteoJob job = new FonteoJob(video);
+        ProcessOptions jobOptions = options.toBuilder().listener(FonteoListener.of(options.getListener(), job.getListener())).build();
+
+        executor.execute(() -> job.run(() -> processVideo(video, folder, format, extension, fps, width, height, columns, rows, flattenType, jobOptions)));
+        return job;
+    }
+
+    /**
+     * @return whether the job the calling thread works for was cancelled
+     */
+    private static boolean isCancelled() {
+        JobControl control = JobControl.current();
+        return control != null && control.isCancelled();
+    }
+
+    private static void deleteRecursively(File folder) {
+        try (Stream<Path> files = Files.walk(folder.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            System.out.println("Failed to remove " + folder.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private static Map<String, String> getManifestParameters(TileNaming naming, int fps, int width, int height, ProcessOptions options) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("fps", String.valueOf(fps));
+        parameters.put("width", String.valueOf(width));
+        parameters.put("height", String.valueOf(height));
+        parameters.put("columns", String.valueOf(naming.getColumns()));
+        parameters.put("rows", String.valueOf(naming.getRows()));
+        parameters.put("extension", naming.getExtension());
+        parameters.put("format", naming.getFormat());
+        parameters.put("flattenType", String.valueOf(naming.getFlattenType()));
+        parameters.put("output", options.getOutput().name());
+        parameters.put("deduplicate", String.valueOf(options.isDeduplicate()));
+        parameters.put("encoding", options.getEncoding().toString());
+        parameters.put("sampling", options.getSampling().name());
+        return parameters;
+    }
+
+    /**
+     * @return whether the output writes every tile as an image of its own, which {@link ProcessOptions#getEncoding()} applies to
+     */
+    private static boolean isEncodingTiles(ProcessOptions options) {
+        return switch (options.getOutput()) {
+            case FILES, ZIP, TAR -> true;
+            case STORE -> options.getStoreCodec() == TileStore.Codec.IMAGE;
+            case ATLAS, FONT -> false;
+        };
+    }
+
+    /**
+     * Looks up the proxy of the video in the {@link #proxyCache}, generating it first when the run covers the whole timeline anyway.
+     * {@link Sampling#SEEK} never uses one, as the proxy would cost a decode of every frame.
+     *
+     * @return lease on the proxy to read instead of the video, null to read the video itself
+     */
+    private ProxyCache.Lease openProxy(File video, FFmpegProbeResult in, int fps, int width, int height, Sampling sampling, TileSelection selection, FonteoListener listener) {
+        if (proxyCache == null || sampling == Sampling.SEEK) {
+            return null;
+        }
+
+        boolean wholeTimeline = selection.getFirstFrame(fps) <= 1 && selection.getLastFrame(fps) < 0;
+        try {
+            return proxyCache.open(InputFingerprint.of(video), width, height, fps, sampling, !wholeTimeline ? null : file -> {
+                long start = System.nanoTime();
+                listener.phaseStarted(video, "proxy");
+                VideoSegment whole = sampling == Sampling.KEYFRAMES ? VideoSegment.whole().withKeyframesOnly() : VideoSegment.whole();
+
+                // Stored as RGB, so that tiles cut from the proxy are the same as tiles cut from the input.
+                FFmpegBuilder builder = whole.addInputArgs(new FFmpegBuilder(), fps)
+                        .setInput(in)
+                        .addOutput(file.getAbsolutePath())
+                        .setFormat("matroska")
+                        .setVideoCodec("ffv1")
+                        .setVideoPixelFormat(ProxyCache.PIXEL_FORMAT)
+                        .setVideoFilter("fps=" + fps + ",scale=" + width + ":" + height)
+                        .disableAudio()
+                        .disableSubtitle()
+                        .done();
+
+                listener.tileStarted(video, "proxy");
+                executor.createJob(builder, new TileProgress(video, in.getFormat().duration, "proxy", listener)).run();
+                listener.phaseFinished(video, "proxy", System.nanoTime() - start);
+            });
+        } catch (IOException e) {
+            listener.notice(video, "Unable to use a proxy of " + video.getName() + ", decoding it instead: " + e.getMessage());
+            return null;
+        } catch (RuntimeException e) {
+            if (isCancelled()) {
+                throw e;
+            }
+            listener.notice(video, "Unable to use a proxy of " + video.getName() + ", decoding it instead: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Runs the first pass of an indexed profile, building one palette from every frame of the scaled video.
+     * Always covers the whole video, so that a partial re-render maps colors just like a full run.
+     *
+     * @return temporary palette image, to be deleted once the job is done
+     */
+    private File generatePalette(File video, FFmpegProbeResult in, int fps, int width, int height, EncodingProfile encoding, FonteoListener listener) {
+        long start = System.nanoTime();
+        listener.phaseStarted(video, "palette");
+        try {
+            File palette = Files.createTempFile("fonteo-palette", ".png").toFile();
+
+            FFmpegBuilder builder = new FFmpegBuilder()
+                    .setInput(in)
+                    .addOutput(palette.getAbsolutePath())
+                    .setFormat("image2")
+                    .setVideoFilter("fps=" + fps + ",scale=" + width + ":" + height + "," + encoding.getPaletteGenFilter())
+                    .disableAudio()
+                    .disableSubtitle()
+                    .addExtraArgs("-frames:v", "1", "-update", "1")
+                    .done();
+
+            listener.tileStarted(video, "palette");
+            executor.createJob(builder, new TileProgress(video, in.getFormat().duration, "palette", listener)).run();
+            listener.phaseFinished(video, "palette", System.nanoTime() - start);
+            return palette;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodes and scales the video once and hands every tile of every frame picked by the options' {@link TileSelection} to the consumer, without writing anything.
+     * Frame numbers start at 1, just like in the image sequences written by {@link #processVideo}.
+     */
+    public void processTiles(File video, int fps, int width, int height, int columns, int rows, ProcessOptions options, TileConsumer consumer) throws IOException {
+        FFmpegProbeResult in = probe(video);
+        TileScheduler scheduler = new TileScheduler(options.getParallelism(), options.getThreads());
+        FonteoListener listener = FonteoListener.of(new JfrListener(), options.getListener());
+        TileSelection selection = options.getSelection();
+        selection.validate(columns, rows);
+
+        List<VideoSegment> range = selection.restrict(SegmentPlanner.getInputSegments(in, fps, SegmentPlanner.getSampling(ffprobe, video, in, fps, options, listener)), fps);
+        if (range.isEmpty()) {
+            return;
+        }
+
+        TileConsumer selected = tile -> {
+            if (selection.contains(tile.getX(), tile.getY())) {
+                consumer.accept(tile);
+            }
+        };
+        int threads = scheduler.getThreadsPerJob(1);
+        InJvmCropEngine engine = new InJvmCropEngine(ffmpeg, threads, threads, listener);
+        for (TileMetrics metrics : InJvmTileWriter.runSegments(engine, video, in, fps, width, height, columns, rows, range, null, selected)) {
+            if (selection.contains(metrics.getX(), metrics.getY())) {
+                listener.tileFinished(metrics);
+            }
+        }
+    }
+}
@@ -19,26 +19,22 @@
 package me.domirusz24.fonteo.api;
 
 import net.bramp.ffmpeg.FFmpeg;
-import net.bramp.ffmpeg.FFmpegExecutor;
 import net.bramp.ffmpeg.FFprobe;
-import net.bramp.ffmpeg.builder.FFmpegBuilder;
-import net.bramp.ffmpeg.job.FFmpegJob;
 import net.bramp.ffmpeg.probe.FFmpegProbeResult;
-import net.bramp.ffmpeg.progress.Progress;
-import net.bramp.ffmpeg.progress.ProgressListener;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
 
+/**
+ * Static facade over a default {@link Fonteo} instance, which is replaced by every {@code init} call.
+ * Use {@link Fonteo#builder()} for independent engines with their own configuration.
+ */
 public class FonteoAPI {
 
-    private static FFmpeg ffmpeg;
-    private static FFprobe ffprobe;
-    private static FFmpegExecutor executor;
+    private static volatile Fonteo instance;
+    private static volatile ProbeCache probeCache = new ProbeCache(ProbeCache.getDefaultDirectory(), 256);
+    private static volatile ProxyCache proxyCache;
 
     public static boolean init(FFmpeg ffmpeg, FFprobe ffprobe) {
 
@@ -46,10 +42,12 @@ public class FonteoAPI {
             return false;
         }
 
-        FonteoAPI.ffmpeg = ffmpeg;
-        FonteoAPI.ffprobe = ffprobe;
-
-        FonteoAPI.executor = new FFmpegExecutor(ffmpeg, ffprobe);
+        FonteoAPI.instance = Fonteo.builder()
+                .ffmpeg(ffmpeg)
+                .ffprobe(ffprobe)
+                .probeCache(probeCache)
+                .proxyCache(proxyCache)
+                .build();
 
         return true;
     }
@@ -59,150 +57,133 @@ public class FonteoAPI {
     }
 
     public static boolean initFromResource() throws IOException, UnsupportedOsException {
-        FonteoAPI.ffmpeg = new FFmpeg(ExecutableSupplier.getFromResource("ffmpeg").get().getPath());;
-        FonteoAPI.ffprobe = new FFprobe(ExecutableSupplier.getFromResource("ffprobe").get().getPath());;
-
-        FonteoAPI.executor = new FFmpegExecutor(ffmpeg, ffprobe);
-
-        return true;
+        return init(
+                new FFmpeg(ExecutableSupplier.getFromResource("ffmpeg").get().getPath()),
+                new FFprobe(ExecutableSupplier.getFromResource("ffprobe").get().getPath())
+        );
     }
 
     public static boolean init(String ffmpeg, String ffprobe) throws IOException {
         return init(ExecutableSupplier.getFFmpeg(ffmpeg), ExecutableSupplier.getFFprobe(ffprobe));
     }
 
-    public enum FlattenVideoType {
-        CHAR_CODE, SIMPLE
-    }
-
-    public static void processVideo(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows) {
-        processVideo(video, folder, format, extension, fps, width, height, columns, rows, null);
-    }
-
-    public static void processVideo(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows, FlattenVideoType flattenType) {
-
-        if (flattenType != null) {
-            format = "%x-%y-%d";
+    /**
+     * @return the instance every static method runs on
+     * @throws IllegalStateException when none of the {@code init} methods succeeded yet
+     */
+    public static Fonteo getInstance() {
+        Fonteo fonteo = instance;
+        if (fonteo == null) {
+            throw new IllegalStateException("FonteoAPI has not been initialized");
         }
+        return fonteo;
+    }
 
-        folder.delete();
-        folder.mkdirs();
-
-        FFmpegProbeResult tempIn = null;
-        try {
-            tempIn = ffprobe.probe(video.getAbsolutePath());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * @param probeCache cache used for every probed video, or null to always run ffprobe
+     */
+    public static synchronized void setProbeCache(ProbeCache probeCache) {
+        FonteoAPI.probeCache = probeCache;
 
-        final FFmpegProbeResult in = tempIn;
-
-        int tileWidth = width / columns;
-        int tileHeight = height / rows;
-
-        for (int y = 0; y < rows; y++) {
-            for (int x = 0; x < columns; x++) {
-
-                System.out.println("Doing: x=" + x + " and y=" + y);
-
-                FFmpegBuilder builder = new FFmpegBuilder()
-                        .setInput(in)
-                        .addOutput(new File(folder, format.replaceAll("%x", String.valueOf(x)).replaceAll("%y", String.valueOf(y)) + "." + extension).getAbsolutePath())
-                        .setFormat("image2")
-                        .setVideoFilter("scale=" + width + ":" + height + ",crop=" + tileWidth + ":" + tileHeight + ":" + tileWidth * x + ":" + tileHeight * y)
-                        .setVideoFrameRate(fps)
-                        .done();
-                FFmpegJob job = executor.createJob(builder, new ProgressListener() {
-                    final double duration_ns = in.getFormat().duration * TimeUnit.SECONDS.toNanos(1);
-                    @Override
-                    public void progress(Progress progress) {
-                        double percentage = progress.out_time_ns / duration_ns;
-
-                        if (percentage > 3) {
-                            percentage = 0;
-                        } else if (percentage > 1) {
-                            percentage = 1;
-                        }
-
-                        System.out.printf(
-                                "%.0f%%\n",
-                                percentage * 100
-                        );
-                    }
-                });
-
-                job.run();
-
-            }
+        if (instance != null) {
+            instance = instance.toBuilder().probeCache(probeCache).build();
         }
-
-        flattenFolder(video, folder, extension, columns, rows, flattenType);
     }
 
-    private static void flattenFolder(File video, File folder, String extension, int columns, int rows, FlattenVideoType flattenType) {
+    /**
+     * @param proxyCache cache of scaled inputs read instead of decoding them again, or null to always decode them
+     */
+    public static synchronized void setProxyCache(ProxyCache proxyCache) {
+        FonteoAPI.proxyCache = proxyCache;
 
-        File[] files = folder.listFiles();
-
-        if (files == null || files.length == 0) {
-            System.out.println("Folder is empty.");
-            return;
+        if (instance != null) {
+            instance = instance.toBuilder().proxyCache(proxyCache).build();
         }
+    }
 
-        if (flattenType == FlattenVideoType.CHAR_CODE) {
-            flattenCharCode(extension, columns, rows, files);
-        } else if (flattenType == FlattenVideoType.SIMPLE) {
-            flattenSimple(video, extension, columns, rows, files);
-        }
+    public static FFmpegProbeResult probe(File video) throws IOException {
+        return getInstance().probe(video);
     }
 
-    private static void flattenSimple(File video, String extension, int columns, int rows, File[] files) {
-        String name = video.getName().substring(0, video.getName().length() - 4);
+    /**
+     * Opens the tile store written by {@link OutputType#STORE}, see {@link Fonteo#openStore}.
+     */
+    public static TileStore openStore(File output) throws IOException {
+        return getInstance().openStore(output);
+    }
 
-        for (File file : files) {
-            String fileName = file.getName().substring(0, file.getName().lastIndexOf('.'));
+    public enum FlattenVideoType {
+        CHAR_CODE, SIMPLE
+    }
 
-            String[] frameData = fileName.split("-");
+    public enum Engine {
+        SINGLE_PASS, PER_TILE, IN_JVM
+    }
 
-            int x = Integer.parseInt(frameData[0]);
-            int y = Integer.parseInt(frameData[1]);
-            int frame = Integer.parseInt(frameData[2]) - 1;
+    /**
+     * How the frames at the target fps are picked from the input.
+     */
+    public enum Sampling {
+        /**
+         * Decodes every input frame and keeps the one shown at each output frame's time.
+         */
+        EXACT,
+        /**
+         * Decodes keyframes only, each one standing in for every output frame until the next keyframe.
+         */
+        KEYFRAMES,
+        /**
+         * Seeks to every output frame on its own, decoding from the keyframe before it.
+         */
+        SEEK,
+        /**
+         * Picks one of the others from the keyframes of the input, see {@link ProcessOptions#getSamplingTolerance()}.
+         */
+        AUTO
+    }
 
+    public enum OutputType {
+        FILES, ATLAS, ZIP, TAR, FONT, STORE;
 
-            String newFileName = name + "-" + ((frame * rows * columns) + x + (y * columns) + 1) + "." + extension;
-            Path source = file.toPath();
-            Path target = file.getParentFile().toPath().resolve(newFileName);
+        /**
+         * @return whether every tile is written into a single archive instead of the output folder
+         */
+        public boolean isArchive() {
+            return this == ZIP || this == TAR;
+        }
 
-            try {
-                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
-            } catch (IOException e) {
-                System.out.println("Failed to rename file: " + fileName);
-                e.printStackTrace();
-            }
+        /**
+         * @return whether the output folder names a single file rather than a folder
+         */
+        public boolean isSingleFile() {
+            return isArchive() || this == STORE;
         }
     }
 
-    private static void flattenCharCode(String extension, int columns, int rows, File[] files) {
-        for (File file : files) {
-            String fileName = file.getName().substring(0, file.getName().lastIndexOf('.'));
-
-            String[] frameData = fileName.split("-");
+    public static VideoStats processVideo(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows) {
+        return getInstance().processVideo(video, folder, format, extension, fps, width, height, columns, rows);
+    }
 
-            int x = Integer.parseInt(frameData[0]);
-            int y = Integer.parseInt(frameData[1]);
-            int frame = Integer.parseInt(frameData[2]) - 1;
+    public static VideoStats processVideo(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows, FlattenVideoType flattenType) {
+        return getInstance().processVideo(video, folder, format, extension, fps, width, height, columns, rows, flattenType);
+    }
 
+    public static VideoStats processVideo(File video, File folder, String format, String extension, int fps, int width, int height, int columns, int rows, FlattenVideoType flattenType, ProcessOptions options) {
+        return getInstance().processVideo(video, folder, format, extension, fps, width, height, columns, rows, flattenType, options);
+    }
 
-            String newFileName = "#" + getCharacterCode((frame * rows * columns) + x + (y * columns) + 1) + "." + extension;
-            Path source = file.toPath();
-            Path target = file.getParentFile().toPath().resolve(newFileName);
+    /**
+     * Produces every grid from a single decode of the video, see {@link Fonteo#processGrids}.
+     */
+    public static List<VideoStats> processGrids(File video, String format, String extension, List<GridSpec> grids, ProcessOptions options) {
+        return getInstance().processGrids(video, format, extension, grids, options);
+    }
 
-            try {
-                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
-            } catch (IOException e) {
-                System.out.println("Failed to rename file: " + fileName);
-                e.printStackTrace();
-            }
-        }
+    /**
+     * Hands every selected tile to the consumer without writing anything, see {@link Fonteo#processTiles}.
+     */
+    public static void processTiles(File video, int fps, int width, int height, int columns, int rows, ProcessOptions options, TileConsumer consumer) throws IOException {
+        getInstance().processTiles(video, fps, width, height, columns, rows, options, consumer);
     }
 
     public static String getCharacterCode(int image) {
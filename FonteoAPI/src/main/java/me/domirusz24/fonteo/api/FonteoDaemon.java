@@ -0,0 +1,509 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a warm {@link Fonteo} running and accepts {@link JobRequest}s over HTTP on localhost.
+ * <ul>
+ *     <li>{@code GET /status} - whether the daemon is up and how busy it is</li>
+ *     <li>{@code POST /jobs} - submits a {@link JobRequest}, answers with its id</li>
+ *     <li>{@code GET /jobs} and {@code GET /jobs/<id>} - state of the jobs</li>
+ *     <li>{@code GET /jobs/<id>/events} - every event of the job as JSON lines, see {@link EventLogListener},
+ *     streamed until the job is done</li>
+ *     <li>{@code POST /jobs/<id>/cancel} - cancels a queued or running job, see {@link FonteoJob#cancel()}</li>
+ * </ul>
+ * At most {@code maxJobs} jobs run at once, the rest wait in submission order. All FFmpeg jobs of all
+ * running jobs share one {@link TileScheduler}, which bounds FFmpeg concurrency to {@code parallelism}.
+ * <p>
+ * Jobs read and write any path the daemon's user can, so every request needs the token the daemon writes
+ * to a file only that user can read, see {@link #getTokenFile(int)}, and has to be addressed to the loopback
+ * host by name. A web page can neither read the token nor, through DNS rebinding, pass as that host.
+ */
+public class FonteoDaemon implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 7370;
+    /**
+     * Finished jobs whose state and events are kept, older ones are forgotten.
+     */
+    public static final int FINISHED_JOBS_KEPT = 100;
+
+    private static final Gson GSON = new Gson();
+
+    private final Fonteo fonteo;
+    private final int threads;
+    private final TileScheduler scheduler;
+    private final ExecutorService jobPool;
+    private final ExecutorService requestPool;
+    private final HttpServer server;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger jobIds = new AtomicInteger();
+    private final Deque<String> finishedJobs = new ArrayDeque<>();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private final String token;
+    private final File tokenFile;
+
+    public FonteoDaemon(Fonteo fonteo, int port, int maxJobs, int parallelism, int threads) throws IOException {
+        this.fonteo = fonteo;
+        this.threads = threads;
+        this.scheduler = new TileScheduler(parallelism, threads, true);
+        this.jobPool = Executors.newFixedThreadPool(maxJobs, daemonThreads("fonteo-job-"));
+        // Event streams stay open for as long as their job runs, so requests can't share a bounded pool.
+        this.requestPool = Executors.newCachedThreadPool(daemonThreads("fonteo-request-"));
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(requestPool);
+        this.server.createContext("/status", this::handleStatus);
+        this.server.createContext("/jobs", this::handleJobs);
+
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.token = HexFormat.of().formatHex(secret);
+        this.tokenFile = getTokenFile(getPort());
+        writeToken(tokenFile.toPath(), token);
+    }
+
+    /**
+     * @return {@code $XDG_CACHE_HOME/fonteo/daemon-<port>.token}, falling back to {@code ~/.cache/fonteo/daemon-<port>.token}
+     */
+    public static File getTokenFile(int port) {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        File base = cacheHome != null && !cacheHome.isBlank() ? new File(cacheHome) : new File(System.getProperty("user.home"), ".cache");
+        return new File(base, "fonteo" + File.separator + "daemon-" + port + ".token");
+    }
+
+    private static void writeToken(Path file, String token) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.deleteIfExists(file);
+
+        // Created readable by the owner only, before the token is in it.
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+        }
+        Files.writeString(file, token, StandardCharsets.UTF_8);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Blocks until the daemon is closed.
+     */
+    public void join() throws InterruptedException {
+        closed.await();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Answers requests which are not addressed to the loopback host, do not carry the token or post something else than JSON.
+     * Requiring JSON also makes browsers ask before sending a cross-origin post at all.
+     *
+     * @return whether the request may be handled
+     */
+    private boolean isAllowed(HttpExchange exchange) throws IOException {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null || !host.equals("127.0.0.1:" + getPort()) && !host.equals("localhost:" + getPort())) {
+            respond(exchange, 403, error("Unknown host"));
+            return false;
+        }
+
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !MessageDigest.isEqual(authorization.getBytes(StandardCharsets.UTF_8), ("Bearer " + token).getBytes(StandardCharsets.UTF_8))) {
+            respond(exchange, 401, error("Missing or wrong token"));
+            return false;
+        }
+
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (exchange.getRequestMethod().equals("POST") && (contentType == null || !contentType.startsWith("application/json"))) {
+            respond(exchange, 415, error("Requests need to be application/json"));
+            return false;
+        }
+        return true;
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        if (!isAllowed(exchange)) {
+            return;
+        }
+
+        JsonObject status = new JsonObject();
+        status.addProperty("jobs", jobs.size());
+        status.addProperty("running", jobs.values().stream().filter(job -> job.state == JobState.RUNNING).count());
+        status.addProperty("queued", jobs.values().stream().filter(job -> job.state == JobState.QUEUED).count());
+        respond(exchange, 200, status);
+    }
+
+    private void handleJobs(HttpExchange exchange) throws IOException {
+        if (!isAllowed(exchange)) {
+            return;
+        }
+
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        String method = exchange.getRequestMethod();
+
+        // path is "", "jobs", id, action
+        if (path.length == 2 && method.equals("POST")) {
+            submit(exchange);
+        } else if (path.length == 2 && method.equals("GET")) {
+            JsonArray array = new JsonArray();
+            jobs.values().stream().sorted((a, b) -> Integer.compare(a.number, b.number)).forEach(job -> array.add(job.toJson()));
+            respond(exchange, 200, array);
+        } else if (path.length == 4 && jobs.containsKey(path[2]) && path[3].equals("cancel") && method.equals("POST")) {
+            Job job = jobs.get(path[2]);
+            job.cancel();
+            respond(exchange, 200, job.toJson());
+        } else if (path.length >= 3 && jobs.containsKey(path[2]) && method.equals("GET")) {
+            Job job = jobs.get(path[2]);
+
+            if (path.length == 3) {
+                respond(exchange, 200, job.toJson());
+            } else if (path.length == 4 && path[3].equals("events")) {
+                streamEvents(exchange, job);
+            } else {
+                respond(exchange, 404, error("Not found"));
+            }
+        } else {
+            respond(exchange, 404, error("Not found"));
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        JobRequest request;
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            request = GSON.fromJson(reader, JobRequest.class);
+        } catch (JsonParseException e) {
+            respond(exchange, 400, error("Invalid job: " + e.getMessage()));
+            return;
+        }
+
+        if (request == null || request.getVideos() == null || request.getVideos().isEmpty() || request.getOutput() == null) {
+            respond(exchange, 400, error("A job needs videos and an output"));
+            return;
+        }
+        if (request.getFormat() == null || request.getExtension() == null) {
+            respond(exchange, 400, error("A job needs a format and an extension"));
+            return;
+        }
+        // Gson leaves missing numbers at 0, which would only fail once the job divides by them.
+        if (request.getFps() <= 0 || request.getWidth() <= 0 || request.getHeight() <= 0 || request.getColumns() <= 0 || request.getRows() <= 0) {
+            respond(exchange, 400, error("A job needs a positive fps, width, height, columns and rows"));
+            return;
+        }
+
+        Job job;
+        try {
+            job = new Job(request);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error("Invalid job: " + e.getMessage()));
+            return;
+        }
+        jobs.put(job.id, job);
+        jobPool.execute(job::run);
+
+        System.out.println("Queued " + job.id + ": " + String.join(", ", request.getVideos()));
+
+        JsonObject response = new JsonObject();
+        response.addProperty("id", job.id);
+        respond(exchange, 202, response);
+    }
+
+    private void streamEvents(HttpExchange exchange, Job job) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+
+        try (OutputStream output = exchange.getResponseBody()) {
+            int next = 0;
+            while (true) {
+                List<String> lines;
+                boolean done;
+
+                synchronized (job) {
+                    while (next == job.events.size() && !job.state.isDone()) {
+                        job.wait();
+                    }
+                    lines = new ArrayList<>(job.events.subList(next, job.events.size()));
+                    done = job.state.isDone();
+                }
+
+                for (String line : lines) {
+                    output.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                output.flush();
+                next += lines.size();
+
+                if (done && lines.isEmpty()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Forgets the oldest finished jobs once more than {@link #FINISHED_JOBS_KEPT} are kept.
+     * Streams still reading the events of a forgotten job finish reading them.
+     */
+    private void retire(Job job) {
+        synchronized (finishedJobs) {
+            finishedJobs.addLast(job.id);
+            while (finishedJobs.size() > FINISHED_JOBS_KEPT) {
+                jobs.remove(finishedJobs.removeFirst());
+            }
+        }
+    }
+
+    private static JsonObject error(String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        return error;
+    }
+
+    private static void respond(HttpExchange exchange, int code, Object body) throws IOException {
+        byte[] bytes = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadId = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        jobPool.shutdownNow();
+        requestPool.shutdownNow();
+        scheduler.close();
+        tokenFile.delete();
+        closed.countDown();
+    }
+
+    public enum JobState {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED;
+
+        public boolean isDone() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private class Job {
+        private final String id;
+        private final int number;
+        private final JobRequest request;
+        private final ProcessOptions options;
+        private final List<String> events = new ArrayList<>();
+        private final List<VideoStats> stats = new ArrayList<>();
+        private final Map<String, String> failures = new LinkedHashMap<>();
+        private final JobControl control = new JobControl();
+        private volatile JobState state = JobState.QUEUED;
+
+        /**
+         * @throws IllegalArgumentException when the request asks for options that do not exist or do not fit its grid
+         */
+        private Job(JobRequest request) {
+            this.request = request;
+            this.options = request.toOptions(threads, new EventLogListener(this::addEvent, true));
+            options.getSelection().validate(request.getColumns(), request.getRows());
+            options.getEncoding().validate(request.getExtension());
+
+            this.number = jobIds.incrementAndGet();
+            this.id = "job-" + number;
+        }
+
+        private void run() {
+            try {
+                control.bind(this::process).run();
+            } catch (CancellationException e) {
+                setState(JobState.CANCELLED);
+            } catch (RuntimeException e) {
+                // Anything failing outside of a single video fails the whole job, streams waiting for it included.
+                synchronized (this) {
+                    failures.put(id, String.valueOf(e.getMessage()));
+                }
+                setState(JobState.FAILED);
+                System.out.println("Failed " + id + ": " + e.getMessage());
+            }
+        }
+
+        private void cancel() {
+            control.cancel();
+            synchronized (this) {
+                // A queued job never starts, there is nothing to wait for.
+                if (state == JobState.QUEUED) {
+                    setState(JobState.CANCELLED);
+                }
+            }
+        }
+
+        private void process() {
+            if (!start()) {
+                return;
+            }
+
+            List<File> videos = new ArrayList<>();
+            for (String video : request.getVideos()) {
+                videos.add(new File(video));
+            }
+
+            File output = new File(request.getOutput());
+            Map<File, File> folders = request.isBatch() ? BatchProcessor.getOutputFolders(videos, output) : Map.of(videos.get(0), output);
+
+            for (File video : folders.keySet()) {
+                if (control.isCancelled()) {
+                    break;
+                }
+                try {
+                    VideoStats result = fonteo.processVideo(video, folders.get(video), request.getFormat(), request.getExtension(), request.getFps(),
+                            request.getWidth(), request.getHeight(), request.getColumns(), request.getRows(), request.getFlattenType(), options, scheduler);
+                    synchronized (this) {
+                        stats.add(result);
+                    }
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        failures.put(video.getPath(), String.valueOf(e.getMessage()));
+                    }
+                }
+            }
+
+            if (control.isCancelled()) {
+                setState(JobState.CANCELLED);
+                System.out.println("Cancelled " + id);
+                return;
+            }
+
+            boolean failed;
+            synchronized (this) {
+                failed = !failures.isEmpty();
+            }
+            setState(failed ? JobState.FAILED : JobState.DONE);
+
+            System.out.println((failed ? "Failed " : "Finished ") + id);
+        }
+
+        private synchronized void addEvent(String line) {
+            events.add(line);
+            notifyAll();
+        }
+
+        /**
+         * @return whether the job went from queued to running, false when it was cancelled before
+         */
+        private synchronized boolean start() {
+            if (state != JobState.QUEUED) {
+                return false;
+            }
+            state = JobState.RUNNING;
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Moves the job to the given state, unless it is already done.
+         */
+        private void setState(JobState state) {
+            boolean finished;
+            synchronized (this) {
+                if (this.state.isDone()) {
+                    return;
+                }
+                finished = state.isDone();
+                this.state = state;
+                notifyAll();
+            }
+
+            if (finished) {
+                retire(this);
+            }
+        }
+
+        private synchronized JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("id", id);
+            json.addProperty("state", state.name());
+            json.add("videos", GSON.toJsonTree(request.getVideos()));
+            json.addProperty("output", request.getOutput());
+
+            JsonArray finished = new JsonArray();
+            for (VideoStats video : stats) {
+                JsonObject entry = new JsonObject();
+                entry.addProperty("video", video.getVideo().getPath());
+                entry.addProperty("skipped", video.isSkipped());
+                entry.addProperty("frames", video.getFrames());
+                entry.addProperty("tiles", video.getTiles());
+                entry.addProperty("seconds", video.getSeconds());
+                entry.addProperty("bytesWritten", video.getBytesWritten());
+                finished.add(entry);
+            }
+            json.add("finished", finished);
+            json.add("failures", GSON.toJsonTree(failures));
+
+            return json;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Handle of a video processed in the background, see {@link Fonteo#submit}.
+ * <pre>
+ * FonteoJob job = fonteo.submit(video, folder, "%x-%y-%d", "png", 10, 765, 510, 3, 2, null, options);
+ * job.subscribe(new FonteoListener() { ... });
+ * job.getResult().thenAccept(stats -&gt; ...);
+ * job.cancel();
+ * </pre>
+ */
+public class FonteoJob {
+
+    private final File video;
+    private final JobControl control = new JobControl();
+    private final CompletableFuture<VideoStats> result = new CompletableFuture<>();
+    private final List<FonteoListener> subscribers = new CopyOnWriteArrayList<>();
+
+    FonteoJob(File video) {
+        this.video = video;
+
+        // Cancelling the future cancels the job, just like cancelling the job completes the future.
+        result.whenComplete((stats, error) -> {
+            if (error instanceof CancellationException) {
+                cancel();
+            }
+        });
+    }
+
+    public File getVideo() {
+        return video;
+    }
+
+    /**
+     * @return the statistics of the processed video, completed exceptionally with a {@link CancellationException}
+     * if the job was cancelled or with the cause of a failure
+     */
+    public CompletableFuture<VideoStats> getResult() {
+        return result;
+    }
+
+    /**
+     * Forwards every further event of this job to the listener, next to the one of the job's {@link ProcessOptions}.
+     */
+    public void subscribe(FonteoListener listener) {
+        subscribers.add(listener);
+    }
+
+    public void unsubscribe(FonteoListener listener) {
+        subscribers.remove(listener);
+    }
+
+    /**
+     * Kills the job's FFmpeg processes and stops it from starting new ones. Partial output is removed
+     * once the job has stopped, after which the result completes with a {@link CancellationException}.
+     *
+     * @return false if the job had already finished
+     */
+    public boolean cancel() {
+        if (result.isDone() && !result.isCancelled()) {
+            return false;
+        }
+        control.cancel();
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return control.isCancelled();
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    FonteoListener getListener() {
+        return new FonteoListener() {
+            @Override
+            public void jobStarted(File video, FonteoAPI.Engine engine, int columns, int rows) {
+                subscribers.forEach(listener -> listener.jobStarted(video, engine, columns, rows));
+            }
+
+            @Override
+            public void tileStarted(File video, String tile) {
+                subscribers.forEach(listener -> listener.tileStarted(video, tile));
+            }
+
+            @Override
+            public void progress(File video, String tile, double percentage, double fps, double speed) {
+                subscribers.forEach(listener -> listener.progress(video, tile, percentage, fps, speed));
+            }
+
+            @Override
+            public void tileFinished(TileMetrics metrics) {
+                subscribers.forEach(listener -> listener.tileFinished(metrics));
+            }
+
+            @Override
+            public void phaseStarted(File video, String phase) {
+                subscribers.forEach(listener -> listener.phaseStarted(video, phase));
+            }
+
+            @Override
+            public void phaseFinished(File video, String phase, long nanos) {
+                subscribers.forEach(listener -> listener.phaseFinished(video, phase, nanos));
+            }
+
+            @Override
+            public void notice(File video, String message) {
+                subscribers.forEach(listener -> listener.notice(video, message));
+            }
+
+            @Override
+            public void jobFinished(VideoStats stats) {
+                subscribers.forEach(listener -> listener.jobFinished(stats));
+            }
+
+            @Override
+            public void jobFailed(File video, Throwable error) {
+                subscribers.forEach(listener -> listener.jobFailed(video, error));
+            }
+        };
+    }
+
+    /**
+     * Runs the work on the calling thread under this job's control and completes the result with its outcome.
+     */
+    void run(Supplier<VideoStats> work) {
+        VideoStats[] stats = new VideoStats[1];
+        try {
+            control.bind(() -> stats[0] = work.get()).run();
+            result.complete(stats[0]);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(control.isCancelled() ? new CancellationException("Cancelled " + video.getName()) : e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Receives what happens while videos are processed. Methods are called from whatever thread does the work,
+ * possibly for several videos and tiles at the same time, and should return quickly.
+ */
+public interface FonteoListener {
+
+    FonteoListener NONE = new FonteoListener() {};
+
+    default void jobStarted(File video, FonteoAPI.Engine engine, int columns, int rows) {}
+
+    /**
+     * @param tile the tile being worked on, or "all tiles" when a single job produces every tile
+     */
+    default void tileStarted(File video, String tile) {}
+
+    /**
+     * @param percentage progress of the tile between 0 and 1
+     * @param fps frames per second the tile is currently processed at
+     * @param speed processed seconds of video per second
+     */
+    default void progress(File video, String tile, double percentage, double fps, double speed) {}
+
+    default void tileFinished(TileMetrics metrics) {}
+
+    /**
+     * @param phase what is about to be done, as in {@link #phaseFinished}
+     */
+    default void phaseStarted(File video, String phase) {}
+
+    /**
+     * @param phase what was done, one of "probe", "keyframes", "proxy", "palette", "rename", "atlas", "font", "dedup", "archive" or "store"
+     */
+    default void phaseFinished(File video, String phase, long nanos) {}
+
+    /**
+     * @param message something worth telling about the video which is not an error, like a fallback to a slower way of processing it
+     */
+    default void notice(File video, String message) {}
+
+    default void jobFinished(VideoStats stats) {}
+
+    default void jobFailed(File video, Throwable error) {}
+
+    static FonteoListener of(FonteoListener... listeners) {
+        List<FonteoListener> all = List.of(listeners);
+
+        return new FonteoListener() {
+            @Override
+            public void jobStarted(File video, FonteoAPI.Engine engine, int columns, int rows) {
+                all.forEach(listener -> listener.jobStarted(video, engine, columns, rows));
+            }
+
+            @Override
+            public void tileStarted(File video, String tile) {
+                all.forEach(listener -> listener.tileStarted(video, tile));
+            }
+
+            @Override
+            public void progress(File video, String tile, double percentage, double fps, double speed) {
+                all.forEach(listener -> listener.progress(video, tile, percentage, fps, speed));
+            }
+
+            @Override
+            public void tileFinished(TileMetrics metrics) {
+                all.forEach(listener -> listener.tileFinished(metrics));
+            }
+
+            @Override
+            public void phaseStarted(File video, String phase) {
+                all.forEach(listener -> listener.phaseStarted(video, phase));
+            }
+
+            @Override
+            public void phaseFinished(File video, String phase, long nanos) {
+                all.forEach(listener -> listener.phaseFinished(video, phase, nanos));
+            }
+
+            @Override
+            public void notice(File video, String message) {
+                all.forEach(listener -> listener.notice(video, message));
+            }
+
+            @Override
+            public void jobFinished(VideoStats stats) {
+                all.forEach(listener -> listener.jobFinished(stats));
+            }
+
+            @Override
+            public void jobFailed(File video, Throwable error) {
+                all.forEach(listener -> listener.jobFailed(video, error));
+            }
+        };
+    }
+}
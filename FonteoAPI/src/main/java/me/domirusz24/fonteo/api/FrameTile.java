@@ -0,0 +1,96 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A tile of a {@link RawFrame}. Pixels are not copied, the tile only remembers where
+ * its rows start inside the frame buffer.
+ */
+@Getter
+public class FrameTile {
+
+    private final RawFrame source;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+
+    FrameTile(RawFrame source, int x, int y, int width, int height) {
+        this.source = source;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getFrame() {
+        return source.getFrame();
+    }
+
+    /**
+     * @return ARGB value of the pixel at the given tile coordinates
+     */
+    public int getPixel(int px, int py) {
+        return source.getPixel(x * width + px, y * height + py);
+    }
+
+    /**
+     * @return the bytes of the given row of this tile, sharing the frame buffer
+     */
+    public ByteBuffer getRow(int row) {
+        return source.getBuffer().slice(getRowStart(row) * RawFrame.BYTES_PER_PIXEL, width * RawFrame.BYTES_PER_PIXEL);
+    }
+
+    /**
+     * Copies the given row of this tile into {@code target}, starting at {@code offset}.
+     */
+    public void copyRow(int row, int[] target, int offset) {
+        IntBuffer pixels = source.getPixels();
+        pixels.get(getRowStart(row), target, offset, width);
+    }
+
+    /**
+     * Copies this tile's ARGB pixels row after row into {@code target}.
+     */
+    public void copyPixels(int[] target) {
+        for (int row = 0; row < height; row++) {
+            copyRow(row, target, row * width);
+        }
+    }
+
+    /**
+     * @param imageType either {@link BufferedImage#TYPE_INT_ARGB} or {@link BufferedImage#TYPE_INT_RGB}
+     */
+    public BufferedImage toImage(int imageType) {
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        copyPixels(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        return image;
+    }
+
+    private int getRowStart(int row) {
+        return (y * height + row) * source.getWidth() + x * width;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.File;
+
+/**
+ * One size and grid a video is cut into by {@link Fonteo#processGrids}, written to a folder of its own.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class GridSpec {
+
+    private final File folder;
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int rows;
+    @Builder.Default
+    private final int fps = 20;
+    /**
+     * Null for unflattened tile sequences named after the job's format.
+     */
+    private final FonteoAPI.FlattenVideoType flattenType;
+
+    /**
+     * @param spec size and grid like {@code 765x510:3x2}, written to a folder named like {@code 765x510-3x2} inside the parent
+     */
+    public static GridSpec parse(String spec, File parent, int fps, FonteoAPI.FlattenVideoType flattenType) {
+        String[] parts = spec.trim().split("[x:]");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Invalid grid, expected <width>x<height>:<columns>x<rows>: " + spec);
+        }
+
+        int width = Integer.parseInt(parts[0]);
+        int height = Integer.parseInt(parts[1]);
+        int columns = Integer.parseInt(parts[2]);
+        int rows = Integer.parseInt(parts[3]);
+
+        return GridSpec.builder()
+                .folder(new File(parent, width + "x" + height + "-" + columns + "x" + rows))
+                .width(width)
+                .height(height)
+                .columns(columns)
+                .rows(rows)
+                .fps(fps)
+                .flattenType(flattenType)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " as " + columns + "x" + rows + " at " + fps + " fps";
+    }
+}
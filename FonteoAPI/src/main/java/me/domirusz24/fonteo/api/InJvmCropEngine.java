@@ -0,0 +1,252 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import net.bramp.ffmpeg.FFmpeg;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Lets FFmpeg decode and scale the video once, then cuts every frame into tiles inside the JVM
+ * and hands them to a {@link TileConsumer} running on a worker pool.
+ * <p>
+ * Frames are read into a small pool of reused direct buffers. A buffer goes back to the pool once
+ * every tile of its frame has been consumed, which also keeps the reader from running ahead of the workers.
+ */
+public class InJvmCropEngine {
+
+    private final FFmpeg ffmpeg;
+    private final int workers;
+    private final int ffmpegThreads;
+    private final FonteoListener listener;
+
+    public InJvmCropEngine(FFmpeg ffmpeg, int workers, int ffmpegThreads) {
+        this(ffmpeg, workers, ffmpegThreads, new ConsoleListener());
+    }
+
+    /**
+     * @param listener receives the progress of the run, tile metrics are returned by {@link #run} instead
+     */
+    public InJvmCropEngine(FFmpeg ffmpeg, int workers, int ffmpegThreads, FonteoListener listener) {
+        this.ffmpeg = ffmpeg;
+        this.workers = workers;
+        this.ffmpegThreads = ffmpegThreads;
+        this.listener = listener;
+    }
+
+    public List<TileMetrics> run(FFmpegProbeResult in, int fps, int width, int height, int columns, int rows, TileConsumer consumer) throws IOException {
+        return run(in, fps, width, height, columns, rows, 0, null, consumer);
+    }
+
+    /**
+     * @param skipFrames amount of leading frames which are decoded but not handed to the consumer
+     * @param framesCompleted notified with the amount of leading frames whose tiles have all been consumed, may be null
+     * @return metrics of every tile position, in row-major order, without the amount of bytes written
+     */
+    public List<TileMetrics> run(FFmpegProbeResult in, int fps, int width, int height, int columns, int rows, int skipFrames, IntConsumer framesCompleted, TileConsumer consumer) throws IOException {
+        return run(in, fps, width, height, columns, rows, VideoSegment.whole(), skipFrames, framesCompleted, consumer);
+    }
+
+    /**
+     * @param segment part of the input to decode, whose frames keep their numbers from a run over the whole input
+     * @param skipFrames number of the last frame which is decoded but not handed to the consumer
+     */
+    public List<TileMetrics> run(FFmpegProbeResult in, int fps, int width, int height, int columns, int rows, VideoSegment segment, int skipFrames, IntConsumer framesCompleted, TileConsumer consumer) throws IOException {
+        return run(new File(in.getFormat().filename), in, fps, width, height, columns, rows, segment, skipFrames, framesCompleted, consumer);
+    }
+
+    /**
+     * @param video video the progress and metrics are reported for, which differs from the input when reading a {@link ProxyCache} proxy
+     */
+    public List<TileMetrics> run(File video, FFmpegProbeResult in, int fps, int width, int height, int columns, int rows, VideoSegment segment, int skipFrames, IntConsumer framesCompleted, TileConsumer consumer) throws IOException {
+        int tileWidth = width / columns;
+        int tileHeight = height / rows;
+        int tiles = columns * rows;
+
+        int bufferAmount = Math.max(2, workers / tiles + 2);
+        BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(bufferAmount);
+        for (int i = 0; i < bufferAmount; i++) {
+            freeBuffers.add(ByteBuffer.allocateDirect(RawFrame.getFrameSize(width, height)));
+        }
+
+        String threads = String.valueOf(ffmpegThreads);
+
+        FFmpegBuilder builder = segment.addInputArgs(new FFmpegBuilder().addExtraArgs("-threads", threads), fps)
+                .setInput(in)
+                .addStdoutOutput()
+                .setFormat("rawvideo")
+                .setVideoPixelFormat("bgra")
+                .setVideoFilter("fps=" + fps + ",scale=" + width + ":" + height)
+                .disableAudio()
+                .disableSubtitle()
+                .addExtraArgs("-threads", threads)
+                .done();
+
+        AtomicInteger threadId = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "fonteo-encoder-" + threadId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        double expectedFrames = Math.max(1, segment.getFrames() >= 0 ? segment.getFrames() : (in.getFormat().duration - segment.getStartSeconds()) * fps);
+        int lastFrame = segment.getFrames() >= 0 ? segment.getFirstFrame() + segment.getFrames() - 1 : Integer.MAX_VALUE;
+        int printedPercentage = -1;
+
+        AtomicLongArray queueWait = new AtomicLongArray(tiles);
+        AtomicLongArray wallTime = new AtomicLongArray(tiles);
+        long start = System.nanoTime();
+
+        skipFrames = Math.max(skipFrames, segment.getFirstFrame() - 1);
+        FrameWatermark watermark = new FrameWatermark(skipFrames, framesCompleted);
+
+        int frameNumber = segment.getFirstFrame() - 1;
+
+        try (RawVideoPipe pipe = RawVideoPipe.start(ffmpeg, builder)) {
+            while (failure.get() == null) {
+                ByteBuffer buffer = freeBuffers.take();
+
+                if (!pipe.read(buffer)) {
+                    break;
+                }
+
+                RawFrame frame = new RawFrame(++frameNumber, width, height, buffer);
+
+                // The input runs one frame past the end of a segment, which is only read to let FFmpeg finish.
+                if (frameNumber <= skipFrames || frameNumber > lastFrame) {
+                    freeBuffers.add(buffer);
+                    continue;
+                }
+
+                AtomicInteger remaining = new AtomicInteger(tiles);
+                long queued = System.nanoTime();
+
+                for (int y = 0; y < rows; y++) {
+                    for (int x = 0; x < columns; x++) {
+                        FrameTile tile = frame.tile(x, y, tileWidth, tileHeight);
+                        int index = x + y * columns;
+                        pool.execute(() -> {
+                            try {
+                                if (failure.get() == null) {
+                                    long started = System.nanoTime();
+                                    queueWait.addAndGet(index, started - queued);
+                                    consumer.accept(tile);
+                                    wallTime.addAndGet(index, System.nanoTime() - started);
+                                }
+                            } catch (Throwable e) {
+                                failure.compareAndSet(null, e);
+                            } finally {
+                                if (remaining.decrementAndGet() == 0) {
+                                    freeBuffers.add(buffer);
+                                    if (failure.get() == null) {
+                                        watermark.complete(frame.getFrame());
+                                    }
+                                }
+                            }
+                        });
+                    }
+                }
+
+                int decoded = frameNumber - segment.getFirstFrame() + 1;
+                int percentage = (int) Math.min(100, decoded * 100 / expectedFrames);
+                if (percentage != printedPercentage) {
+                    printedPercentage = percentage;
+                    double decodeFps = getDecodeFps(decoded, start);
+                    listener.progress(video, "all tiles", percentage / 100.0, decodeFps, decodeFps / fps);
+                }
+            }
+
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+            if (failure.get() != null) {
+                throw failure.get() instanceof IOException exception ? exception : new IOException(failure.get());
+            }
+
+            pipe.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int consumed = Math.max(0, Math.min(frameNumber, lastFrame) - skipFrames);
+        double decodeFps = getDecodeFps(frameNumber - segment.getFirstFrame() + 1, start);
+        List<TileMetrics> metrics = new ArrayList<>(tiles);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                int index = x + y * columns;
+                metrics.add(new TileMetrics(video, "x=" + x + " and y=" + y, x, y, consumed,
+                        wallTime.get(index), queueWait.get(index), 0, decodeFps, decodeFps / fps));
+            }
+        }
+        return metrics;
+    }
+
+    private static double getDecodeFps(int frames, long start) {
+        long elapsed = System.nanoTime() - start;
+        return elapsed == 0 ? 0 : frames / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Tracks the amount of leading frames that are complete, while frames finish out of order.
+     */
+    private static class FrameWatermark {
+        private final BitSet completed = new BitSet();
+        private final IntConsumer listener;
+        private int watermark;
+
+        private FrameWatermark(int watermark, IntConsumer listener) {
+            this.watermark = watermark;
+            this.listener = listener;
+        }
+
+        private synchronized void complete(int frame) {
+            completed.set(frame);
+
+            int next = completed.nextClearBit(watermark + 1) - 1;
+            if (next > watermark) {
+                completed.clear(watermark + 1, next + 1);
+                watermark = next;
+                if (listener != null) {
+                    listener.accept(watermark);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import me.domirusz24.fonteo.api.FonteoAPI.Engine;
+import me.domirusz24.fonteo.api.FonteoAPI.OutputType;
+import me.domirusz24.fonteo.api.FonteoAPI.Sampling;
+import net.bramp.ffmpeg.FFmpeg;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runs the {@link Engine#IN_JVM} engine, writing the tiles to whatever output and stages the options ask for.
+ */
+class InJvmTileWriter {
+
+    private final FFmpeg ffmpeg;
+
+    InJvmTileWriter(FFmpeg ffmpeg) {
+        this.ffmpeg = ffmpeg;
+    }
+
+    void process(File video, FFmpegProbeResult in, TileNaming naming, int fps, int width, int height, ProcessOptions options, Sampling sampling, File palette, TileScheduler scheduler, JobManifest manifest, FonteoListener listener) {
+        int columns = naming.getColumns();
+        int rows = naming.getRows();
+        TileSelection selection = options.getSelection();
+
+        List<VideoSegment> range = selection.restrict(SegmentPlanner.getInputSegments(in, fps, sampling), fps);
+        if (range.isEmpty()) {
+            listener.notice(video, "No selected frames in " + video.getName());
+            return;
+        }
+
+        // Only loose files can be resumed frame by frame, everything else keeps state in memory until it is closed.
+        boolean resumable = options.getOutput() == OutputType.FILES && !options.isDeduplicate() && options.getSink() == null;
+
+        listener.tileStarted(video, "all tiles");
+
+        AtlasWriter atlas = options.getOutput() == OutputType.ATLAS ? new AtlasWriter(naming.getFolder(), naming.getExtension(), width / columns, height / rows, options.getAtlasSize()) : null;
+        FontPackWriter font = options.getOutput() == OutputType.FONT ? new FontPackWriter(naming.getFolder(), options.getFontNamespace(), naming.getVideoName(), options.getPackFormat(), width / columns, height / rows, options.getAtlasSize()) : null;
+        TileDeduplicator deduplicator = options.isDeduplicate() ? new TileDeduplicator(naming) : null;
+        ArchiveWriter archive = null;
+        TileStoreWriter store = null;
+
+        if (font != null && deduplicator != null) {
+            // Glyphs are placed by their flattened index, so skipped duplicates would only leave holes in the textures.
+            throw new IllegalArgumentException("Font output can not be deduplicated");
+        }
+
+        AtomicLongArray bytesWritten = new AtomicLongArray(columns * rows);
+
+        try {
+            TileConsumer consumer;
+
+            if (options.getOutput().isArchive()) {
+                ArchiveWriter writer = archive = ArchiveWriter.open(ArchiveWriter.getArchiveFile(naming.getFolder(), options.getOutput()), options.getOutput(), options.getCompressionLevel());
+                TileEncoder encoder = createEncoder(naming, options, palette);
+                consumer = tile -> {
+                    byte[] data = encoder.encode(tile);
+                    writer.add(naming.getName(tile.getFrame(), tile.getX(), tile.getY()), data);
+                    bytesWritten.addAndGet(tile.getX() + tile.getY() * columns, data.length);
+                };
+            } else if (atlas != null) {
+                consumer = tile -> atlas.add(tile, naming.getFlattenedIndex(tile.getFrame(), tile.getX(), tile.getY()));
+            } else if (options.getOutput() == OutputType.STORE) {
+                TileStoreWriter writer = store = new TileStoreWriter(TileStoreWriter.getStoreFile(naming.getFolder()), options.getStoreCodec(), naming.getExtension(), options.getStoreCodec() == TileStore.Codec.IMAGE ? createEncoder(naming, options, palette) : null, options.getCompressionLevel(), width / columns, height / rows, columns, rows);
+                consumer = tile -> bytesWritten.addAndGet(tile.getX() + tile.getY() * columns,
+                        writer.add(tile, naming.getFlattenedIndex(tile.getFrame(), tile.getX(), tile.getY())));
+            } else if (font != null) {
+                consumer = tile -> font.add(tile, naming.getFlattenedIndex(tile.getFrame(), tile.getX(), tile.getY()));
+            } else {
+                TileSink sink = options.getSink() != null ? options.getSink() : new DirectoryTileSink(naming);
+                TileEncoder encoder = sink.isEncoded() ? createEncoder(naming, options, palette) : null;
+                consumer = tile -> {
+                    byte[] data = encoder != null ? encoder.encode(tile) : null;
+                    sink.accept(tile, naming.getFlattenedIndex(tile.getFrame(), tile.getX(), tile.getY()), data);
+                    if (data != null) {
+                        bytesWritten.addAndGet(tile.getX() + tile.getY() * columns, data.length);
+                    }
+                };
+            }
+
+            if (!selection.isAllTiles()) {
+                TileConsumer selected = consumer;
+                consumer = tile -> {
+                    if (selection.contains(tile.getX(), tile.getY())) {
+                        selected.accept(tile);
+                    }
+                };
+            }
+
+            if (deduplicator != null) {
+                consumer = deduplicator.filter(consumer);
+            }
+
+            // The encoders take their share of the thread budget like an FFmpeg job would.
+            int threads = scheduler.getThreadsPerJob(1);
+            InJvmCropEngine engine = new InJvmCropEngine(ffmpeg, threads, threads, listener);
+            TileConsumer tileConsumer = consumer;
+
+            scheduler.run(List.of(() -> {
+                try {
+                    List<TileMetrics> metrics = runSegments(engine, video, in, fps, width, height, columns, rows, range, resumable ? manifest : null, tileConsumer);
+
+                    for (TileMetrics tile : metrics) {
+                        if (!selection.contains(tile.getX(), tile.getY())) {
+                            continue;
+                        }
+                        listener.tileFinished(tile.withBytesWritten(bytesWritten.get(tile.getX() + tile.getY() * columns)));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+
+            if (atlas != null) {
+                long atlasStart = System.nanoTime();
+                listener.phaseStarted(video, "atlas");
+                atlas.close();
+                listener.phaseFinished(video, "atlas", System.nanoTime() - atlasStart);
+            }
+            if (font != null) {
+                long fontStart = System.nanoTime();
+                listener.phaseStarted(video, "font");
+                font.close();
+                listener.phaseFinished(video, "font", System.nanoTime() - fontStart);
+                listener.notice(video, "Wrote font " + font.getFontId() + " into " + naming.getFolder().getName());
+            }
+            if (deduplicator != null) {
+                long dedupStart = System.nanoTime();
+                listener.phaseStarted(video, "dedup");
+                if (archive != null) {
+                    archive.add(TileDeduplicator.INDEX_FILE, deduplicator.getIndex());
+                } else if (store != null) {
+                    // Duplicates simply share the payload of the written tile.
+                    int[] writtenIndices = deduplicator.getWrittenIndices();
+                    for (int i = 0; i < writtenIndices.length; i++) {
+                        if (writtenIndices[i] != 0) {
+                            store.alias(i + 1, writtenIndices[i]);
+                        }
+                    }
+                } else {
+                    deduplicator.close();
+                }
+                listener.notice(video, deduplicator.getSummary());
+                listener.phaseFinished(video, "dedup", System.nanoTime() - dedupStart);
+            }
+            if (archive != null) {
+                long archiveStart = System.nanoTime();
+                listener.phaseStarted(video, "archive");
+                archive.close();
+                listener.phaseFinished(video, "archive", System.nanoTime() - archiveStart);
+            }
+            if (store != null) {
+                long storeStart = System.nanoTime();
+                listener.phaseStarted(video, "store");
+                store.close();
+                listener.phaseFinished(video, "store", System.nanoTime() - storeStart);
+            }
+        } catch (IOException e) {
+            abort(archive, store);
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            abort(archive, store);
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes whatever single file output was started.
+     */
+    private static void abort(ArchiveWriter archive, TileStoreWriter store) {
+        if (archive != null) {
+            archive.abort();
+        }
+        if (store != null) {
+            store.abort();
+        }
+    }
+
+    /**
+     * Runs the engine over the segments one after another, skipping the ones an interrupted run already finished.
+     *
+     * @param manifest manifest the progress is resumed from and recorded in, null to start over
+     * @return metrics of every tile position summed over all segments, empty when every segment was skipped
+     */
+    static List<TileMetrics> runSegments(InJvmCropEngine engine, File video, FFmpegProbeResult in, int fps, int width, int height, int columns, int rows, List<VideoSegment> segments, JobManifest manifest, TileConsumer consumer) throws IOException {
+        List<TileMetrics> metrics = new ArrayList<>();
+
+        for (VideoSegment segment : segments) {
+            int framesCompleted = manifest != null ? manifest.getFramesCompleted() : 0;
+            if (segment.getFrames() >= 0 && segment.getFirstFrame() + segment.getFrames() - 1 <= framesCompleted) {
+                continue;
+            }
+
+            List<TileMetrics> segmentMetrics = engine.run(video, in, fps, width, height, columns, rows, segment, framesCompleted, manifest != null ? manifest::setFramesCompleted : null, consumer);
+            if (metrics.isEmpty()) {
+                metrics.addAll(segmentMetrics);
+            } else {
+                for (int i = 0; i < metrics.size(); i++) {
+                    metrics.set(i, metrics.get(i).plus(segmentMetrics.get(i)));
+                }
+            }
+        }
+        return metrics;
+    }
+
+    private static TileEncoder createEncoder(TileNaming naming, ProcessOptions options, File palette) throws IOException {
+        return new TileEncoder(naming.getExtension(), options.getEncoding(), palette == null ? null : TilePalette.load(palette));
+    }
+}
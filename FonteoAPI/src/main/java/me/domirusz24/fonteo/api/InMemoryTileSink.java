@@ -0,0 +1,71 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps every encoded tile in memory, keyed by its flattened index. Meant for short videos and tests,
+ * as nothing is ever dropped until {@link #clear()} is called.
+ */
+public class InMemoryTileSink implements TileSink {
+
+    private final ConcurrentSkipListMap<Integer, byte[]> tiles = new ConcurrentSkipListMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    @Override
+    public void accept(FrameTile tile, int index, byte[] data) {
+        byte[] previous = tiles.put(index, data);
+        bytes.addAndGet(data.length - (previous == null ? 0 : previous.length));
+    }
+
+    /**
+     * @return the encoded tile with the given flattened index, null if it was not produced
+     */
+    public byte[] get(int index) {
+        return tiles.get(index);
+    }
+
+    /**
+     * @return every encoded tile, ordered by flattened index
+     */
+    public SortedMap<Integer, byte[]> getTiles() {
+        return tiles;
+    }
+
+    public int size() {
+        return tiles.size();
+    }
+
+    /**
+     * @return the total size of every kept tile
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public void clear() {
+        for (Map.Entry<Integer, byte[]> entry; (entry = tiles.pollFirstEntry()) != null; ) {
+            bytes.addAndGet(-entry.getValue().length);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Identifies the contents of an input file without reading all of it.
+ * <p>
+ * The content hash covers the size and up to {@value #SAMPLE_SIZE} bytes at the start, middle and end of the file.
+ * Hashing the whole video would cost about as much I/O as decoding it, while any re-encode or edit
+ * changes at least the sampled container header or trailer.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class InputFingerprint {
+
+    public static final int SAMPLE_SIZE = 1024 * 1024;
+
+    private final long size;
+    private final long lastModified;
+    private final String hash;
+
+    public InputFingerprint(long size, long lastModified, String hash) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+    }
+
+    public static InputFingerprint of(File file) throws IOException {
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        digest.update(Long.toString(size).getBytes());
+
+        byte[] sample = new byte[(int) Math.min(SAMPLE_SIZE, size)];
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            for (long position : new long[] {0, Math.max(0, size / 2 - sample.length / 2), Math.max(0, size - sample.length)}) {
+                input.seek(position);
+                input.readFully(sample);
+                digest.update(sample);
+            }
+        }
+
+        return new InputFingerprint(size, lastModified, HexFormat.of().formatHex(digest.digest()));
+    }
+}
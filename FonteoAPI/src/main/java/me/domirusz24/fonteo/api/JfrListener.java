@@ -0,0 +1,237 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Turns listener callbacks into Flight Recorder events, which cost next to nothing while no recording is running.
+ * Always installed in front of the listener from {@link ProcessOptions}.
+ * An instance follows a single job, so concurrent jobs, even on the same file, each need their own.
+ */
+class JfrListener implements FonteoListener {
+
+    private final AtomicReference<JobEvent> job = new AtomicReference<>();
+    private final Map<String, TileEvent> tiles = new ConcurrentHashMap<>();
+    private final Map<String, PhaseEvent> phases = new ConcurrentHashMap<>();
+    private volatile int columns;
+    private volatile int rows;
+    /**
+     * Events of every tile of a shared decode, which reports the tiles on their own only once it is done.
+     */
+    private volatile TileEvent[] sharedTiles;
+
+    @Override
+    public void jobStarted(File video, FonteoAPI.Engine engine, int columns, int rows) {
+        JobEvent event = new JobEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+
+        event.video = video.getPath();
+        event.engine = engine.name();
+        event.columns = columns;
+        event.rows = rows;
+        event.begin();
+        job.set(event);
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    @Override
+    public void tileStarted(File video, String tile) {
+        TileEvent event = new TileEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+
+        event.begin();
+        tiles.put(tile, event);
+
+        if (tile.equals("all tiles") && columns > 0) {
+            TileEvent[] events = new TileEvent[columns * rows];
+            for (int i = 0; i < events.length; i++) {
+                events[i] = new TileEvent();
+                events[i].begin();
+            }
+            sharedTiles = events;
+        }
+    }
+
+    @Override
+    public void tileFinished(TileMetrics metrics) {
+        TileEvent event = tiles.remove(metrics.getTile());
+        TileEvent[] shared = sharedTiles;
+        if (event == null && shared != null && metrics.getX() >= 0 && metrics.getX() < columns && metrics.getY() < rows) {
+            int index = metrics.getX() + metrics.getY() * columns;
+            event = shared[index];
+            shared[index] = null;
+        }
+        if (event == null) {
+            // Never seen starting, so it is committed without a duration.
+            event = new TileEvent();
+        }
+        if (!event.isEnabled()) {
+            return;
+        }
+
+        event.video = metrics.getVideo().getPath();
+        event.tile = metrics.getTile();
+        event.frames = metrics.getFrames();
+        event.wallTime = metrics.getWallNanos();
+        event.queueWait = metrics.getQueueWaitNanos();
+        event.bytesWritten = metrics.getBytesWritten();
+        event.decodeFps = metrics.getDecodeFps();
+        event.speed = metrics.getSpeed();
+        event.commit();
+    }
+
+    @Override
+    public void phaseStarted(File video, String phase) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            phases.put(getPhaseKey(phase), event);
+        }
+    }
+
+    @Override
+    public void phaseFinished(File video, String phase, long nanos) {
+        PhaseEvent event = phases.remove(getPhaseKey(phase));
+        if (event == null) {
+            event = new PhaseEvent();
+        }
+        if (!event.isEnabled()) {
+            return;
+        }
+
+        event.video = video.getPath();
+        event.phase = phase;
+        event.phaseTime = nanos;
+        event.commit();
+    }
+
+    @Override
+    public void jobFinished(VideoStats stats) {
+        forgetTiles();
+        JobEvent event = job.getAndSet(null);
+        if (event != null) {
+            event.frames = stats.getFrames();
+            event.tiles = stats.getTiles();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void jobFailed(File video, Throwable error) {
+        forgetTiles();
+        JobEvent event = job.getAndSet(null);
+        if (event != null) {
+            event.failure = String.valueOf(error.getMessage());
+            event.commit();
+        }
+    }
+
+    /**
+     * Drops the events of tiles which were only started, like the proxy or the shared decode of the in-JVM engine.
+     */
+    private void forgetTiles() {
+        tiles.clear();
+        sharedTiles = null;
+    }
+
+    /**
+     * A phase starts and finishes on the same thread, while several tiles may be renamed at the same time.
+     */
+    private static String getPhaseKey(String phase) {
+        return phase + "/" + Thread.currentThread().getId();
+    }
+
+    @Name("me.domirusz24.fonteo.Job")
+    @Label("Fonteo Job")
+    @Category("Fonteo")
+    @Description("Processing of one video")
+    static class JobEvent extends Event {
+        @Label("Video")
+        String video;
+        @Label("Engine")
+        String engine;
+        @Label("Columns")
+        int columns;
+        @Label("Rows")
+        int rows;
+        @Label("Frames")
+        long frames;
+        @Label("Tiles")
+        long tiles;
+        @Label("Failure")
+        String failure;
+    }
+
+    @Name("me.domirusz24.fonteo.Tile")
+    @Label("Fonteo Tile")
+    @Category("Fonteo")
+    @Description("One finished tile sequence")
+    static class TileEvent extends Event {
+        @Label("Video")
+        String video;
+        @Label("Tile")
+        String tile;
+        @Label("Frames")
+        long frames;
+        @Label("Wall Time")
+        @Timespan
+        long wallTime;
+        @Label("Queue Wait")
+        @Timespan
+        long queueWait;
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+        @Label("Decode FPS")
+        double decodeFps;
+        @Label("Speed")
+        double speed;
+    }
+
+    @Name("me.domirusz24.fonteo.Phase")
+    @Label("Fonteo Phase")
+    @Category("Fonteo")
+    @Description("Probing, renaming flattened tiles, writing atlases or deduplication indices")
+    static class PhaseEvent extends Event {
+        @Label("Video")
+        String video;
+        @Label("Phase")
+        String phase;
+        @Label("Phase Time")
+        @Timespan
+        long phaseTime;
+    }
+}
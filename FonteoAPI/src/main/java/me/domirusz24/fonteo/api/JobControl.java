@@ -0,0 +1,109 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cancellation state of a single job, together with every FFmpeg process it started.
+ * <p>
+ * The control of the job a thread works for is kept in a thread local. {@link TileScheduler} hands it over to
+ * its workers, so processes started anywhere below a job, see {@link #track(Process)}, are killed by {@link #cancel()}.
+ */
+final class JobControl {
+
+    private static final ThreadLocal<JobControl> CURRENT = new ThreadLocal<>();
+
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    /**
+     * @return the control of the job the calling thread works for, or null outside of cancellable jobs
+     */
+    static JobControl current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Registers the process with the calling thread's job, killing it right away if the job was cancelled already.
+     */
+    static void track(Process process) {
+        JobControl control = current();
+        if (control != null) {
+            control.register(process);
+        }
+    }
+
+    /**
+     * @return the job run with the calling thread's control, which fails with a {@link CancellationException}
+     * if the job is cancelled before it starts or while it runs
+     */
+    static Runnable propagate(Runnable job) {
+        JobControl control = current();
+        return control == null ? job : control.bind(job);
+    }
+
+    Runnable bind(Runnable job) {
+        return () -> {
+            JobControl previous = CURRENT.get();
+            CURRENT.set(this);
+            try {
+                checkCancelled();
+                job.run();
+                checkCancelled();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Job was cancelled");
+        }
+    }
+
+    /**
+     * Kills every running process of the job and makes everything it still tries to start fail.
+     */
+    void cancel() {
+        cancelled = true;
+        processes.forEach(JobControl::kill);
+    }
+
+    private void register(Process process) {
+        processes.add(process);
+        process.onExit().thenRun(() -> processes.remove(process));
+
+        if (cancelled) {
+            kill(process);
+        }
+    }
+
+    private static void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+}
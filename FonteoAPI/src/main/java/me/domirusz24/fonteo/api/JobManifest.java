@@ -0,0 +1,184 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Remembers which parts of a job have already been written into an output folder, so that a rerun
+ * with the same input and parameters can skip them.
+ * <p>
+ * Parts are identified by the engine which writes them, e.g. one per tile for {@link FonteoAPI.Engine#PER_TILE}.
+ * Engines that write every tile of a frame at once additionally record how many leading frames are complete.
+ */
+public class JobManifest {
+
+    public static final String FILE_NAME = ".fonteo-manifest.json";
+    public static final String WHOLE_JOB = "all";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final long SAVE_INTERVAL_MS = 2000;
+
+    private transient File file;
+    private transient long lastSave;
+    private transient boolean dirty;
+
+    private InputFingerprint input;
+    private Map<String, String> parameters = new LinkedHashMap<>();
+    private Set<String> completed = new TreeSet<>();
+    private int framesCompleted;
+
+    /**
+     * Loads the manifest of the given folder if it was written for the same input and parameters,
+     * otherwise starts a new one.
+     */
+    public static JobManifest open(File folder, InputFingerprint input, Map<String, String> parameters) {
+        File file = new File(folder, FILE_NAME);
+
+        if (file.isFile()) {
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                JobManifest manifest = GSON.fromJson(reader, JobManifest.class);
+                if (manifest != null && Objects.equals(manifest.input, input) && Objects.equals(manifest.parameters, parameters)) {
+                    manifest.file = file;
+                    return manifest;
+                }
+            } catch (IOException | JsonParseException e) {
+                System.out.println("Ignoring unreadable manifest: " + e.getMessage());
+            }
+        }
+
+        JobManifest manifest = new JobManifest();
+        manifest.file = file;
+        manifest.input = input;
+        manifest.parameters = new LinkedHashMap<>(parameters);
+        manifest.save();
+        return manifest;
+    }
+
+    /**
+     * Starts a manifest which is never written anywhere, for outputs that cannot be resumed.
+     */
+    public static JobManifest inMemory(InputFingerprint input, Map<String, String> parameters) {
+        JobManifest manifest = new JobManifest();
+        manifest.input = input;
+        manifest.parameters = new LinkedHashMap<>(parameters);
+        return manifest;
+    }
+
+    public static String getTilePart(int x, int y) {
+        return "tile-" + x + "-" + y;
+    }
+
+    /**
+     * Segments are identified by their first frame, so that a changed segmentation never matches old parts.
+     */
+    public static String getTilePart(int x, int y, VideoSegment segment) {
+        return segment.isWhole() ? getTilePart(x, y) : getTilePart(x, y) + "-from-" + segment.getFirstFrame();
+    }
+
+    public synchronized boolean isCompleted(String part) {
+        return completed.contains(part);
+    }
+
+    public synchronized boolean isEmpty() {
+        return completed.isEmpty() && framesCompleted == 0;
+    }
+
+    /**
+     * Records a written part. The whole job is saved right away, other parts at most every few seconds,
+     * as a job split into many segments completes thousands of them; {@link #flush()} saves the rest.
+     */
+    public synchronized void complete(String part) {
+        if (!completed.add(part)) {
+            return;
+        }
+
+        dirty = true;
+
+        if (part.equals(WHOLE_JOB) || System.currentTimeMillis() - lastSave >= SAVE_INTERVAL_MS) {
+            save();
+        }
+    }
+
+    public synchronized int getFramesCompleted() {
+        return framesCompleted;
+    }
+
+    /**
+     * Records that every frame up to and including the given one is written. Saved at most every few seconds.
+     */
+    public synchronized void setFramesCompleted(int frames) {
+        if (frames <= framesCompleted) {
+            return;
+        }
+
+        framesCompleted = frames;
+        dirty = true;
+
+        if (System.currentTimeMillis() - lastSave >= SAVE_INTERVAL_MS) {
+            save();
+        }
+    }
+
+    /**
+     * Saves whatever was recorded since the last save.
+     */
+    public synchronized void flush() {
+        if (dirty) {
+            save();
+        }
+    }
+
+    private synchronized void save() {
+        lastSave = System.currentTimeMillis();
+        dirty = false;
+
+        if (file == null) {
+            return;
+        }
+
+        Path target = file.toPath();
+        Path temporary = target.resolveSibling(FILE_NAME + ".tmp");
+
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                GSON.toJson(this, writer);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to save manifest: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A job submitted to a {@link FonteoDaemon}, serialized as JSON. Paths are resolved by the daemon,
+ * so they should be absolute.
+ */
+@Getter
+@Builder
+public class JobRequest {
+
+    private final List<String> videos;
+    /**
+     * Whether every video is written to its own {@code <name>-frames} folder inside {@link #output},
+     * like {@link BatchProcessor} does, instead of the single video being written to {@link #output} itself.
+     */
+    private final boolean batch;
+    private final String output;
+    private final String format;
+    private final String extension;
+    private final int fps;
+    private final int width;
+    private final int height;
+    private final int columns;
+    private final int rows;
+    private final FonteoAPI.FlattenVideoType flattenType;
+    private final FonteoAPI.Engine engine;
+    private final int parallelism;
+    /**
+     * See {@link ProcessOptions#getSegments()}, null for 1.
+     */
+    private final Integer segments;
+    /**
+     * Null for {@link FonteoAPI.Sampling#EXACT}.
+     */
+    private final FonteoAPI.Sampling sampling;
+    /**
+     * See {@link ProcessOptions#getSamplingTolerance()}, null for half a frame.
+     */
+    private final Double samplingTolerance;
+    private final FonteoAPI.OutputType outputType;
+    /**
+     * Name of an {@link EncodingProfile#preset(String) encoding preset}, null for the default one.
+     */
+    private final String encoding;
+    private final int atlasSize;
+    private final int compressionLevel;
+    private final TileStore.Codec storeCodec;
+    private final String fontNamespace;
+    private final int packFormat;
+    private final boolean deduplicate;
+    /**
+     * Selected tiles like {@code "0:0,2:1"}, null for every tile, see {@link TileSelection}.
+     */
+    private final String tiles;
+    /**
+     * Selected frames and time window in seconds, null for no limit.
+     */
+    private final Integer firstFrame;
+    private final Integer lastFrame;
+    private final Double startSeconds;
+    private final Double endSeconds;
+
+    ProcessOptions toOptions(int threads, FonteoListener listener) {
+        return ProcessOptions.builder()
+                .engine(engine == null ? FonteoAPI.Engine.SINGLE_PASS : engine)
+                .parallelism(parallelism > 0 ? parallelism : TileScheduler.availableCores())
+                .threads(threads)
+                .segments(segments == null ? 1 : segments)
+                .sampling(sampling == null ? FonteoAPI.Sampling.EXACT : sampling)
+                .samplingTolerance(samplingTolerance == null ? -1 : samplingTolerance)
+                .output(outputType == null ? FonteoAPI.OutputType.FILES : outputType)
+                .encoding(encoding == null ? EncodingProfile.DEFAULT : EncodingProfile.preset(encoding))
+                .atlasSize(atlasSize > 0 ? atlasSize : 4096)
+                .compressionLevel(compressionLevel)
+                .storeCodec(storeCodec == null ? TileStore.Codec.RAW : storeCodec)
+                .fontNamespace(fontNamespace == null ? "fonteo" : fontNamespace)
+                .packFormat(packFormat > 0 ? packFormat : 15)
+                .deduplicate(deduplicate)
+                .selection(toSelection())
+                .listener(listener)
+                .build();
+    }
+
+    private TileSelection toSelection() {
+        return TileSelection.builder()
+                .tiles(tiles == null ? null : TileSelection.parseTiles(tiles))
+                .firstFrame(firstFrame == null ? 1 : firstFrame)
+                .lastFrame(lastFrame == null ? -1 : lastFrame)
+                .startSeconds(startSeconds == null ? -1 : startSeconds)
+                .endSeconds(endSeconds == null ? -1 : endSeconds)
+                .build();
+    }
+}
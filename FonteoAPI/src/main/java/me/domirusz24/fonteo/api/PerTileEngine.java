@@ -0,0 +1,179 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import net.bramp.ffmpeg.FFmpegExecutor;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.builder.FFmpegOutputBuilder;
+import net.bramp.ffmpeg.job.FFmpegJob;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs one FFmpeg job per tile and segment. As image2 can only number a sequence contiguously, flattened names
+ * cannot be produced by FFmpeg here, so every finished tile sequence is renamed right after its last job,
+ * using names computed from the known tile position.
+ */
+class PerTileEngine {
+
+    private final FFmpegExecutor executor;
+
+    PerTileEngine(FFmpegExecutor executor) {
+        this.executor = executor;
+    }
+
+    void process(File video, FFmpegProbeResult in, TileNaming naming, int fps, int width, int height, EncodingProfile encoding, File palette, TileScheduler scheduler, JobManifest manifest, TileSelection selection, List<VideoSegment> segments, FonteoListener listener) {
+        int columns = naming.getColumns();
+        int rows = naming.getRows();
+        int tileWidth = width / columns;
+        int tileHeight = height / rows;
+
+        Map<String, List<VideoSegment>> remaining = new LinkedHashMap<>();
+        int jobCount = 0;
+        int firstFrame = segments.get(0).getFirstFrame();
+
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                if (!selection.contains(x, y) || manifest.isCompleted(JobManifest.getTilePart(x, y))) {
+                    continue;
+                }
+
+                List<VideoSegment> tileSegments = new ArrayList<>();
+                for (VideoSegment segment : segments) {
+                    if (!manifest.isCompleted(JobManifest.getTilePart(x, y, segment))) {
+                        tileSegments.add(segment);
+                    }
+                }
+
+                if (tileSegments.isEmpty()) {
+                    // Every segment is done, the job was interrupted before the whole tile was marked as such.
+                    finishTile(video, naming, manifest, x, y, firstFrame, listener);
+                } else {
+                    remaining.put(JobManifest.getTilePart(x, y), tileSegments);
+                    jobCount += tileSegments.size();
+                }
+            }
+        }
+
+        String threads = String.valueOf(scheduler.getThreadsPerJob(jobCount));
+        List<Runnable> jobs = new ArrayList<>(jobCount);
+        long[] submitted = new long[1];
+
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                List<VideoSegment> tileSegments = remaining.get(JobManifest.getTilePart(x, y));
+                if (tileSegments == null) {
+                    continue;
+                }
+
+                final int tileX = x;
+                final int tileY = y;
+                AtomicInteger unfinished = new AtomicInteger(tileSegments.size());
+
+                for (VideoSegment segment : tileSegments) {
+                    String tile = "x=" + x + " and y=" + y + (segment.isWhole() ? "" : ", segment " + segment.getIndex());
+
+                    String filter = "scale=" + width + ":" + height + ",crop=" + tileWidth + ":" + tileHeight + ":" + tileWidth * x + ":" + tileHeight * y;
+
+                    FFmpegBuilder builder = segment.addInputArgs(new FFmpegBuilder().addExtraArgs("-threads", threads), fps)
+                            .setInput(in);
+                    FFmpegOutputBuilder output = builder.addOutput(naming.getTileOutput(x, y))
+                            .setFormat("image2");
+
+                    if (palette != null) {
+                        // The palette is a second input, which only a complex filtergraph can refer to.
+                        builder.addInput(palette.getAbsolutePath())
+                                .setComplexFilter("[0:v]" + filter + "[c];[c][1:v]" + encoding.getPaletteUseFilter() + "[t]");
+                        output.addExtraArgs("-map", "[t]");
+                    } else {
+                        output.setVideoFilter(filter);
+                    }
+
+                    output.setVideoFrameRate(fps)
+                            .addExtraArgs("-threads", threads)
+                            .addExtraArgs(segment.getOutputArgs().toArray(new String[0]));
+                    encoding.addOutputArgs(output, naming.getExtension()).done();
+                    TileProgress progress = new TileProgress(video, segment.getDuration(in, fps), tile, listener);
+                    FFmpegJob job = executor.createJob(builder, progress);
+
+                    jobs.add(() -> {
+                        long started = System.nanoTime();
+                        listener.tileStarted(video, tile);
+                        job.run();
+                        long wall = System.nanoTime() - started;
+
+                        manifest.complete(JobManifest.getTilePart(tileX, tileY, segment));
+                        WrittenTiles written = WrittenTiles.of(naming, tileX, tileY, segment, false);
+                        listener.tileFinished(progress.getMetrics(tileX, tileY, written.images(), wall, started - submitted[0], written.bytes()));
+
+                        if (unfinished.decrementAndGet() == 0) {
+                            finishTile(video, naming, manifest, tileX, tileY, firstFrame, listener);
+                        }
+                    });
+                }
+            }
+        }
+
+        submitted[0] = System.nanoTime();
+        scheduler.run(jobs);
+    }
+
+    /**
+     * @param firstFrame number of the first image of the tile's sequence
+     */
+    private static void finishTile(File video, TileNaming naming, JobManifest manifest, int x, int y, int firstFrame, FonteoListener listener) {
+        if (naming.getFlattenType() != null) {
+            long renameStart = System.nanoTime();
+            listener.phaseStarted(video, "rename");
+            renameTile(naming, x, y, firstFrame);
+            listener.phaseFinished(video, "rename", System.nanoTime() - renameStart);
+        }
+
+        manifest.complete(JobManifest.getTilePart(x, y));
+    }
+
+    private static void renameTile(TileNaming naming, int x, int y, int firstFrame) {
+        Path folder = naming.getFolder().toPath();
+
+        for (int frame = firstFrame; ; frame++) {
+            Path source = folder.resolve(naming.getTileName(frame, x, y));
+
+            if (!Files.isRegularFile(source)) {
+                return;
+            }
+
+            try {
+                Files.move(source, folder.resolve(naming.getName(frame, x, y)), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                System.out.println("Failed to rename file: " + source.getFileName());
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import net.bramp.commons.lang3.math.gson.FractionAdapter;
+import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.gson.LowercaseEnumTypeAdapterFactory;
+import net.bramp.ffmpeg.gson.NamedBitsetAdapter;
+import net.bramp.ffmpeg.probe.FFmpegDisposition;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+import org.apache.commons.lang3.math.Fraction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps {@link FFmpegProbeResult}s of already probed files, in a small in-memory LRU in front of an optional
+ * directory with one JSON file per input.
+ * <p>
+ * Entries are looked up by canonical path and are only used while the file still has the size and
+ * modification time it had when it was probed, anything else probes it again and replaces the entry.
+ */
+public class ProbeCache {
+
+    /**
+     * Same adapters as the Gson instance FFprobe itself parses its output with.
+     */
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new LowercaseEnumTypeAdapterFactory())
+            .registerTypeAdapter(Fraction.class, new FractionAdapter())
+            .registerTypeAdapter(FFmpegDisposition.class, new NamedBitsetAdapter<>(FFmpegDisposition.class))
+            .create();
+
+    private final File directory;
+    private final Map<String, Entry> memory;
+
+    /**
+     * @param directory where entries are persisted, or null to only keep them in memory
+     * @param memoryEntries how many entries are kept in memory
+     */
+    public ProbeCache(File directory, int memoryEntries) {
+        this.directory = directory;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+    /**
+     * @return {@code $XDG_CACHE_HOME/fonteo/probe}, falling back to {@code ~/.cache/fonteo/probe}
+     */
+    public static File getDefaultDirectory() {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        File base = cacheHome != null && !cacheHome.isBlank() ? new File(cacheHome) : new File(System.getProperty("user.home"), ".cache");
+        return new File(base, "fonteo" + File.separator + "probe");
+    }
+
+    public FFmpegProbeResult probe(FFprobe ffprobe, File video) throws IOException {
+        File file = video.getCanonicalFile();
+        String path = file.getPath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(path);
+        }
+
+        if (entry == null || !entry.matches(size, lastModified)) {
+            entry = read(path);
+        }
+
+        if (entry == null || !entry.matches(size, lastModified)) {
+            entry = new Entry(path, size, lastModified, ffprobe.probe(path));
+            write(entry);
+        }
+
+        synchronized (memory) {
+            memory.put(path, entry);
+        }
+
+        return entry.result;
+    }
+
+    public void invalidate(File video) throws IOException {
+        String path = video.getCanonicalPath();
+
+        synchronized (memory) {
+            memory.remove(path);
+        }
+
+        if (directory != null) {
+            Files.deleteIfExists(getEntryFile(path));
+        }
+    }
+
+    private Entry read(String path) {
+        if (directory == null) {
+            return null;
+        }
+
+        Path file = getEntryFile(path);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Entry entry = GSON.fromJson(reader, Entry.class);
+            return entry != null && path.equals(entry.path) && entry.result != null ? entry : null;
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    private void write(Entry entry) {
+        if (directory == null) {
+            return;
+        }
+
+        Path file = getEntryFile(entry.path);
+
+        try {
+            Files.createDirectories(file.getParent());
+
+            Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                GSON.toJson(entry, writer);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to cache probe result: " + e.getMessage());
+        }
+    }
+
+    private Path getEntryFile(String path) {
+        return directory.toPath().resolve(Hashing.sha256().hashString(path, StandardCharsets.UTF_8) + ".json");
+    }
+
+    private static class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final FFmpegProbeResult result;
+
+        private Entry(String path, long size, long lastModified, FFmpegProbeResult result) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.result = result;
+        }
+
+        private boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Tuning knobs for {@link FonteoAPI#processVideo} that do not change what is produced, only how.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class ProcessOptions {
+
+    @Builder.Default
+    private final FonteoAPI.Engine engine = FonteoAPI.Engine.SINGLE_PASS;
+
+    /**
+     * Maximum amount of FFmpeg jobs running at the same time.
+     */
+    @Builder.Default
+    private final int parallelism = TileScheduler.availableCores();
+
+    /**
+     * Total amount of FFmpeg threads shared between all concurrently running jobs, which also sizes the tile encoders of the {@link FonteoAPI.Engine#IN_JVM} engine.
+     */
+    @Builder.Default
+    private final int threads = TileScheduler.availableCores();
+
+    /**
+     * Amount of keyframe aligned time segments the input is split into, each one processed by its own FFmpeg jobs.
+     * 0 picks enough of them to keep {@link #parallelism} jobs busy on long videos, 1 never splits.
+     * The {@link FonteoAPI.Engine#IN_JVM} engine always reads the input as a whole.
+     */
+    @Builder.Default
+    private final int segments = 1;
+
+    /**
+     * How frames are picked from the input. Anything but {@link FonteoAPI.Sampling#EXACT} trades accuracy for speed,
+     * which pays off at a low fps from a high fps input.
+     */
+    @Builder.Default
+    private final FonteoAPI.Sampling sampling = FonteoAPI.Sampling.EXACT;
+
+    /**
+     * Seconds a frame may be off its exact time for {@link FonteoAPI.Sampling#AUTO} to use keyframes only,
+     * negative for half a frame at the target fps.
+     */
+    @Builder.Default
+    private final double samplingTolerance = -1;
+
+    /**
+     * What the tiles are written as. Anything but {@link FonteoAPI.OutputType#FILES} needs
+     * the tiles' pixels and therefore always runs on the {@link FonteoAPI.Engine#IN_JVM} engine.
+     */
+    @Builder.Default
+    private final FonteoAPI.OutputType output = FonteoAPI.OutputType.FILES;
+
+    /**
+     * Receives every tile instead of the output folder, null to write files. Needs the tiles' pixels and therefore
+     * always runs on the {@link FonteoAPI.Engine#IN_JVM} engine. Only combines with {@link FonteoAPI.OutputType#FILES}
+     * without {@link #deduplicate}, and can not be resumed, as the folder is left alone.
+     */
+    private final TileSink sink;
+
+    /**
+     * How tile images are encoded. Only applies to outputs writing every tile as an image of its own,
+     * which excludes {@link FonteoAPI.OutputType#ATLAS}, {@link FonteoAPI.OutputType#FONT} and stores without the image codec.
+     */
+    @Builder.Default
+    private final EncodingProfile encoding = EncodingProfile.DEFAULT;
+
+    /**
+     * Maximum width and height of a sheet written by {@link FonteoAPI.OutputType#ATLAS}
+     * or a glyph texture written by {@link FonteoAPI.OutputType#FONT}.
+     */
+    @Builder.Default
+    private final int atlasSize = 4096;
+
+    /**
+     * Resource namespace of the font written by {@link FonteoAPI.OutputType#FONT}, the font itself is named after the video.
+     */
+    @Builder.Default
+    private final String fontNamespace = "fonteo";
+
+    /**
+     * {@code pack_format} of the resource pack written by {@link FonteoAPI.OutputType#FONT}.
+     */
+    @Builder.Default
+    private final int packFormat = 15;
+
+    /**
+     * How tiles are laid out inside a {@link TileStore} written by {@link FonteoAPI.OutputType#STORE}.
+     */
+    @Builder.Default
+    private final TileStore.Codec storeCodec = TileStore.Codec.RAW;
+
+    /**
+     * Deflate level from 1 to 9 of the entries written by {@link FonteoAPI.OutputType#ZIP}, 0 stores them as they are.
+     * Already compressed formats such as png gain little from it. Also used by {@link TileStore.Codec#DEFLATE}, where 0 is the default level.
+     */
+    private final int compressionLevel;
+
+    /**
+     * Writes every distinct tile only once and maps the rest onto it, see {@link TileDeduplicator}.
+     * Needs the tiles' pixels and therefore always runs on the {@link FonteoAPI.Engine#IN_JVM} engine.
+     */
+    private final boolean deduplicate;
+
+    /**
+     * Tiles and frames to produce, everything by default. Tiles of a partial run keep the names and flattened
+     * indices of a full run, so they can be merged into an earlier output, whose manifest is left untouched.
+     */
+    @Builder.Default
+    private final TileSelection selection = TileSelection.ALL;
+
+    /**
+     * Receives progress and metrics, see {@link EventLogListener} for a machine readable log.
+     */
+    @Builder.Default
+    private final FonteoListener listener = new ConsoleListener();
+
+    public static ProcessOptions defaults() {
+        return ProcessOptions.builder().build();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps scaled, fps reduced copies of already processed inputs, so that tiling them again with another grid,
+ * name format or flatten type only has to cut the cached frames instead of decoding and scaling the input.
+ * <p>
+ * Every proxy is a lossless FFV1 video in {@value #PIXEL_FORMAT}, the format the engines convert scaled frames to,
+ * keyed by the {@link InputFingerprint} of its input together with the size, fps and {@link FonteoAPI.Sampling} it was made with,
+ * so tiles cut from it are the same as tiles cut from the input.
+ * The directory is bounded in size, the least recently used proxies are deleted once it grows past it.
+ * Proxies in use by this instance are never deleted, other processes sharing the directory are not accounted for.
+ */
+public class ProxyCache {
+
+    public static final String EXTENSION = ".mkv";
+    public static final String PIXEL_FORMAT = "bgra";
+
+    private final File directory;
+    private final long maxBytes;
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    private final Map<File, Integer> inUse = new HashMap<>();
+
+    /**
+     * @param directory where proxies are kept
+     * @param maxBytes total size of the proxies kept, the one in use may exceed it until it is released
+     */
+    public ProxyCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return {@code $XDG_CACHE_HOME/fonteo/proxy}, falling back to {@code ~/.cache/fonteo/proxy}
+     */
+    public static File getDefaultDirectory() {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        File base = cacheHome != null && !cacheHome.isBlank() ? new File(cacheHome) : new File(System.getProperty("user.home"), ".cache");
+        return new File(base, "fonteo" + File.separator + "proxy");
+    }
+
+    /**
+     * Looks up the proxy of the input, writing it with the generator when there is none yet.
+     * Only one thread generates a proxy at a time, the others wait for it and use it.
+     *
+     * @param generator writes the proxy into the given file, null to only look up an existing one
+     * @return lease on the proxy, to be closed once it is not read anymore, or null when there is none
+     */
+    public Lease open(InputFingerprint fingerprint, int width, int height, int fps, FonteoAPI.Sampling sampling, Generator generator) throws IOException {
+        String key = getKey(fingerprint, width, height, fps, sampling);
+        File file = new File(directory, key + EXTENSION);
+
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            Lease existing = leaseExisting(file);
+            if (existing != null || generator == null) {
+                return existing;
+            }
+
+            Files.createDirectories(directory.toPath());
+            File temporary = new File(directory, key + EXTENSION + ".part");
+            // Leased before it exists, so that eviction for another proxy never deletes it in between.
+            Lease lease = lease(file);
+            try {
+                generator.write(temporary);
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                lease.close();
+                throw e;
+            } finally {
+                Files.deleteIfExists(temporary.toPath());
+            }
+
+            evict();
+            return lease;
+        }
+    }
+
+    /**
+     * Deletes every proxy which is not in use.
+     */
+    public synchronized void clear() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files != null) {
+            for (File file : files) {
+                if (!inUse.containsKey(file)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return total size of the proxies in the directory
+     */
+    public long getBytes() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        return files == null ? 0 : Arrays.stream(files).mapToLong(File::length).sum();
+    }
+
+    /**
+     * @return lease on the file, or null when it does not exist, checked together so that eviction cannot come in between
+     */
+    private synchronized Lease leaseExisting(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        // The modification time doubles as the last use, which eviction goes by.
+        file.setLastModified(System.currentTimeMillis());
+        return lease(file);
+    }
+
+    private synchronized Lease lease(File file) {
+        inUse.merge(file, 1, Integer::sum);
+        return new Lease(file);
+    }
+
+    private synchronized void release(File file) {
+        inUse.computeIfPresent(file, (key, count) -> count == 1 ? null : count - 1);
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used proxies which are not in use until the directory fits into {@link #maxBytes}.
+     */
+    private synchronized void evict() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+
+        long total = Arrays.stream(files).mapToLong(File::length).sum();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        for (File file : files) {
+            if (total <= maxBytes) {
+                return;
+            }
+            if (inUse.containsKey(file)) {
+                continue;
+            }
+
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                System.out.println("Evicted proxy " + file.getName());
+            }
+        }
+    }
+
+    private static String getKey(InputFingerprint fingerprint, int width, int height, int fps, FonteoAPI.Sampling sampling) {
+        // The content hash already covers the size, the modification time alone does not change the frames.
+        String key = fingerprint.getHash() + ":" + width + "x" + height + "@" + fps + ":" + sampling + ":" + PIXEL_FORMAT;
+        return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+    }
+
+    @FunctionalInterface
+    public interface Generator {
+        void write(File file) throws IOException;
+    }
+
+    /**
+     * Keeps a proxy from being evicted while it is read.
+     */
+    public class Lease implements AutoCloseable {
+
+        private final File file;
+        private boolean closed;
+
+        private Lease(File file) {
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(file);
+            }
+        }
+    }
+}
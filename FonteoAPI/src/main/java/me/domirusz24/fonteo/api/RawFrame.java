@@ -0,0 +1,67 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * A single decoded video frame in packed BGRA layout, which read as little-endian ints
+ * is exactly the ARGB layout used by {@link java.awt.image.BufferedImage}.
+ * <p>
+ * The backing buffer is reused for later frames once every tile of this frame has been consumed,
+ * so neither the frame nor its tiles should be kept after the consumer returns.
+ */
+@Getter
+public class RawFrame {
+
+    public static final int BYTES_PER_PIXEL = 4;
+
+    private final int frame;
+    private final int width;
+    private final int height;
+    private final ByteBuffer buffer;
+    private final IntBuffer pixels;
+
+    public RawFrame(int frame, int width, int height, ByteBuffer buffer) {
+        this.frame = frame;
+        this.width = width;
+        this.height = height;
+        this.buffer = buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        this.pixels = this.buffer.asIntBuffer();
+    }
+
+    /**
+     * @return a view of the given tile which shares this frame's buffer
+     */
+    public FrameTile tile(int x, int y, int tileWidth, int tileHeight) {
+        return new FrameTile(this, x, y, tileWidth, tileHeight);
+    }
+
+    public int getPixel(int x, int y) {
+        return pixels.get(y * width + x);
+    }
+
+    public static int getFrameSize(int width, int height) {
+        return width * height * BYTES_PER_PIXEL;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import net.bramp.ffmpeg.FFmpeg;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Runs FFmpeg with its output piped to stdout as raw video and reads it frame by frame.
+ */
+public class RawVideoPipe implements AutoCloseable {
+
+    private static final int ERROR_TAIL_LENGTH = 4096;
+
+    private final Process process;
+    private final ReadableByteChannel channel;
+    private final Thread errorReader;
+    private final StringBuffer errorTail = new StringBuffer();
+
+    private RawVideoPipe(Process process) {
+        this.process = process;
+        this.channel = Channels.newChannel(process.getInputStream());
+        this.errorReader = new Thread(() -> readErrors(process.getErrorStream()), "fonteo-ffmpeg-stderr");
+        this.errorReader.setDaemon(true);
+        this.errorReader.start();
+    }
+
+    /**
+     * @param builder builder whose only output is {@link FFmpegBuilder#addStdoutOutput()} in {@code rawvideo} format
+     */
+    public static RawVideoPipe start(FFmpeg ffmpeg, FFmpegBuilder builder) throws IOException {
+        List<String> command = ffmpeg.path(builder.build());
+        Process process = new ProcessBuilder(command).start();
+        JobControl.track(process);
+        return new RawVideoPipe(process);
+    }
+
+    /**
+     * Fills the buffer with the next frame.
+     *
+     * @return false once the stream has ended
+     */
+    public boolean read(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() > 0) {
+                    System.out.println("Ignoring truncated frame at the end of the stream.");
+                }
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Waits for FFmpeg to exit and fails if it did not exit cleanly.
+     */
+    public void finish() throws IOException {
+        try {
+            int exitCode = process.waitFor();
+            errorReader.join();
+            if (exitCode != 0) {
+                throw new IOException("ffmpeg returned non-zero exit status " + exitCode + ": " + errorTail.toString().trim());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void readErrors(InputStream errorStream) {
+        byte[] bytes = new byte[1024];
+        int pointer;
+        try (errorStream) {
+            while ((pointer = errorStream.read(bytes)) != -1) {
+                errorTail.append(new String(bytes, 0, pointer, StandardCharsets.UTF_8));
+                if (errorTail.length() > ERROR_TAIL_LENGTH) {
+                    errorTail.delete(0, errorTail.length() - ERROR_TAIL_LENGTH);
+                }
+            }
+        } catch (IOException ignored) {}
+    }
+}
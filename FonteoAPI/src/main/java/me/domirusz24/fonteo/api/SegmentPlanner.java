@@ -0,0 +1,121 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import me.domirusz24.fonteo.api.FonteoAPI.Engine;
+import me.domirusz24.fonteo.api.FonteoAPI.Sampling;
+import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+import net.bramp.ffmpeg.probe.FFmpegStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Decides how the input is sampled and split into segments before any engine runs.
+ */
+final class SegmentPlanner {
+
+    private static final double MIN_AUTOMATIC_SEGMENT_SECONDS = 30;
+
+    /**
+     * Resolves {@link Sampling#AUTO} from the keyframes of the input, any other sampling is returned as it is.
+     */
+    static Sampling getSampling(FFprobe ffprobe, File video, FFmpegProbeResult in, int fps, ProcessOptions options, FonteoListener listener) {
+        if (options.getSampling() != Sampling.AUTO) {
+            return options.getSampling();
+        }
+
+        long start = System.nanoTime();
+        listener.phaseStarted(video, "keyframes");
+        try {
+            List<Double> keyframes = VideoSegment.probeKeyframes(ffprobe, video);
+            listener.phaseFinished(video, "keyframes", System.nanoTime() - start);
+
+            Sampling sampling = VideoSegment.chooseSampling(keyframes, in.getFormat().start_time, in.getFormat().duration, getFrameRate(in), fps, options.getSamplingTolerance());
+            listener.notice(video, "Sampling " + video.getName() + " at " + fps + " fps: " + sampling);
+            return sampling;
+        } catch (IOException | RuntimeException e) {
+            listener.notice(video, "Unable to read the keyframes of " + video.getName() + ", decoding every frame: " + e.getMessage());
+            return Sampling.EXACT;
+        }
+    }
+
+    /**
+     * @return average frame rate of the first video stream, 0 when unknown
+     */
+    private static double getFrameRate(FFmpegProbeResult in) {
+        if (in.getStreams() != null) {
+            for (FFmpegStream stream : in.getStreams()) {
+                if (stream.codec_type == FFmpegStream.CodecType.VIDEO && stream.avg_frame_rate != null) {
+                    return stream.avg_frame_rate.doubleValue();
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the segments the {@link Engine#IN_JVM} engine reads one after another, the whole input unless every frame is seeked to
+     */
+    static List<VideoSegment> getInputSegments(FFmpegProbeResult in, int fps, Sampling sampling) {
+        return switch (sampling) {
+            case SEEK -> in.getFormat().duration > 0 ? VideoSegment.samples(in.getFormat().duration, fps) : List.of(VideoSegment.whole());
+            case KEYFRAMES -> List.of(VideoSegment.whole().withKeyframesOnly());
+            case EXACT, AUTO -> List.of(VideoSegment.whole());
+        };
+    }
+
+    /**
+     * Splits the input into {@link ProcessOptions#getSegments()} keyframe aligned segments,
+     * or a single one covering the whole input when that is not possible. {@link Sampling#SEEK}
+     * always splits it into one segment per output frame.
+     *
+     * @param input file the keyframes are read from, the video itself or its proxy
+     */
+    static List<VideoSegment> getSegments(FFprobe ffprobe, File video, File input, FFmpegProbeResult in, int fps, int tiles, ProcessOptions options, Sampling sampling, FonteoListener listener) {
+        double duration = in.getFormat().duration;
+        int amount = options.getSegments();
+
+        if (sampling == Sampling.SEEK) {
+            return getInputSegments(in, fps, sampling);
+        }
+
+        if (amount == 0) {
+            // Only as many segments as are needed to keep every job slot busy, each one at least a few seconds long.
+            amount = (int) Math.min(options.getParallelism() / tiles, duration / MIN_AUTOMATIC_SEGMENT_SECONDS);
+        }
+
+        if (amount <= 1 || duration <= 0) {
+            return getInputSegments(in, fps, sampling);
+        }
+
+        long start = System.nanoTime();
+        listener.phaseStarted(video, "keyframes");
+        try {
+            List<VideoSegment> segments = VideoSegment.split(VideoSegment.probeKeyframes(ffprobe, input), in.getFormat().start_time, duration, fps, amount);
+            listener.phaseFinished(video, "keyframes", System.nanoTime() - start);
+            return sampling == Sampling.KEYFRAMES ? segments.stream().map(VideoSegment::withKeyframesOnly).toList() : segments;
+        } catch (IOException | RuntimeException e) {
+            listener.notice(video, "Unable to split " + video.getName() + " into segments, processing it as a whole: " + e.getMessage());
+            return getInputSegments(in, fps, sampling);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import net.bramp.ffmpeg.FFmpegExecutor;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.job.FFmpegJob;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes and scales the input once, then splits the scaled stream into one crop per tile,
+ * writing every tile sequence from a single FFmpeg job per segment.
+ * <p>
+ * Flattened output is produced with the {@code untile} filter instead, which emits the tiles of every frame
+ * in flattened order, so that image2 numbers them with their final index.
+ */
+class SinglePassEngine {
+
+    private final FFmpegExecutor executor;
+
+    SinglePassEngine(FFmpegExecutor executor) {
+        this.executor = executor;
+    }
+
+    void process(File video, FFmpegProbeResult in, TileNaming naming, int fps, int width, int height, EncodingProfile encoding, File palette, TileScheduler scheduler, TileSelection selection, List<VideoSegment> segments, FonteoListener listener) {
+        int columns = naming.getColumns();
+        int rows = naming.getRows();
+
+        String threads = String.valueOf(scheduler.getThreadsPerJob(segments.size()));
+
+        List<Runnable> jobs = new ArrayList<>(segments.size());
+        long[] submitted = new long[1];
+
+        for (VideoSegment segment : segments) {
+            FFmpegBuilder builder = createBuilder(in, naming, fps, width, height, encoding, palette, threads, selection, segment);
+
+            String tile = segment.isWhole() ? "all tiles" : "all tiles, segment " + segment.getIndex();
+            TileProgress progress = new TileProgress(video, segment.getDuration(in, fps), tile, listener);
+            FFmpegJob job = executor.createJob(builder, progress);
+
+            jobs.add(() -> {
+                long started = System.nanoTime();
+                listener.tileStarted(video, tile);
+                job.run();
+
+                WrittenTiles written = WrittenTiles.NONE;
+                for (int y = 0; y < rows; y++) {
+                    for (int x = 0; x < columns; x++) {
+                        if (selection.contains(x, y)) {
+                            written = written.plus(WrittenTiles.of(naming, x, y, segment, true));
+                        }
+                    }
+                }
+                long frames = written.images() / selection.getTileCount(columns, rows);
+                listener.tileFinished(progress.getMetrics(-1, -1, frames, System.nanoTime() - started, started - submitted[0], written.bytes()));
+            });
+        }
+
+        submitted[0] = System.nanoTime();
+        scheduler.run(jobs);
+    }
+
+    /**
+     * @param palette palette of an indexed profile, applied to the scaled frames before they are cut into tiles, null for true color
+     */
+    static FFmpegBuilder createBuilder(FFmpegProbeResult in, TileNaming naming, int fps, int width, int height, EncodingProfile encoding, File palette, String threads, TileSelection selection, VideoSegment segment) {
+        FFmpegBuilder builder = segment.addInputArgs(new FFmpegBuilder().addExtraArgs("-threads", threads, "-filter_complex_threads", threads), fps)
+                .setInput(in);
+        if (palette != null) {
+            builder.addInput(palette.getAbsolutePath());
+        }
+
+        StringBuilder filter = new StringBuilder();
+        appendChain(builder, filter, "[0:v]", "", in, naming, fps, width, height, encoding, palette, threads, selection, segment);
+
+        builder.setComplexFilter(filter.toString());
+        return builder;
+    }
+
+    /**
+     * Appends the filter chains scaling the source stream and cutting it into tiles, together with an output per tile sequence.
+     *
+     * @param source label of the decoded stream the chains start from
+     * @param prefix prepended to every label of the chains, keeping the chains of several grids in one filtergraph apart
+     */
+    static void appendChain(FFmpegBuilder builder, StringBuilder filter, String source, String prefix, FFmpegProbeResult in, TileNaming naming, int fps, int width, int height, EncodingProfile encoding, File palette, String threads, TileSelection selection, VideoSegment segment) {
+        int columns = naming.getColumns();
+        int rows = naming.getRows();
+        int tileWidth = width / columns;
+        int tileHeight = height / rows;
+        int tiles = columns * rows;
+
+        filter.append(source).append("fps=").append(fps).append(",scale=").append(width).append(":").append(height);
+
+        if (naming.getFlattenType() != null) {
+            // Flattened indices of the tiles before and at the end of this segment.
+            long base = (long) (segment.getFirstFrame() - 1) * tiles;
+            long end = segment.getFrames() >= 0
+                    ? base + (long) segment.getFrames() * tiles
+                    : in.getFormat().duration > 0 ? ((long) Math.ceil(in.getFormat().duration * fps) + fps) * tiles : Long.MAX_VALUE;
+
+            List<TileNaming.IndexRange> ranges = new ArrayList<>();
+            for (TileNaming.IndexRange range : naming.getFlattenedRanges()) {
+                if (range.first() <= end && range.last() > base) {
+                    ranges.add(range);
+                }
+            }
+
+            filter.append(",crop=").append(tileWidth * columns).append(":").append(tileHeight * rows).append(":0:0")
+                    .append(",format=pix_fmts=rgba|rgb24")
+                    .append(",untile=").append(columns).append("x").append(rows);
+            if (palette != null) {
+                filter.append("[").append(prefix).append("q];[").append(prefix).append("q][1:v]").append(encoding.getPaletteUseFilter());
+            }
+            filter.append(",split=").append(ranges.size());
+            for (int i = 0; i < ranges.size(); i++) {
+                filter.append("[").append(prefix).append("u").append(i).append("]");
+            }
+
+            for (int i = 0; i < ranges.size(); i++) {
+                TileNaming.IndexRange range = ranges.get(i);
+
+                long startFrame = Math.max(0, range.first() - 1 - base);
+                long endFrame = range.last() == Integer.MAX_VALUE ? -1 : range.last() - base;
+                if (segment.getFrames() >= 0) {
+                    endFrame = endFrame < 0 ? end - base : Math.min(endFrame, end - base);
+                }
+
+                filter.append(";[").append(prefix).append("u").append(i).append("]");
+                if (startFrame == 0 && endFrame < 0) {
+                    filter.append("null");
+                } else {
+                    filter.append("trim=start_frame=").append(startFrame);
+                    if (endFrame >= 0) {
+                        filter.append(":end_frame=").append(endFrame);
+                    }
+                    filter.append(",setpts=PTS-STARTPTS");
+                }
+                filter.append("[").append(prefix).append("t").append(i).append("]");
+
+                encoding.addOutputArgs(builder.addOutput(new File(naming.getFolder(), range.pattern()).getAbsolutePath())
+                        .setFormat("image2")
+                        .addExtraArgs("-map", "[" + prefix + "t" + i + "]", "-start_number", String.valueOf(Math.max(range.first(), base + 1)), "-fps_mode", "passthrough", "-threads", threads), naming.getExtension())
+                        .done();
+            }
+        } else {
+            int selected = selection.getTileCount(columns, rows);
+            if (palette != null) {
+                filter.append("[").append(prefix).append("q];[").append(prefix).append("q][1:v]").append(encoding.getPaletteUseFilter());
+            }
+            filter.append(",split=").append(selected);
+            for (int i = 0; i < selected; i++) {
+                filter.append("[").append(prefix).append("s").append(i).append("]");
+            }
+
+            int i = 0;
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < columns; x++) {
+                    if (!selection.contains(x, y)) {
+                        continue;
+                    }
+
+                    filter.append(";[").append(prefix).append("s").append(i).append("]crop=").append(tileWidth).append(":").append(tileHeight).append(":").append(tileWidth * x).append(":").append(tileHeight * y).append("[").append(prefix).append("t").append(i).append("]");
+
+                    encoding.addOutputArgs(builder.addOutput(naming.getTileOutput(x, y))
+                            .setFormat("image2")
+                            .setVideoFrameRate(fps)
+                            .addExtraArgs("-map", "[" + prefix + "t" + i + "]", "-threads", threads)
+                            .addExtraArgs(segment.getOutputArgs().toArray(new String[0])), naming.getExtension())
+                            .done();
+                    i++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package me.domirusz24.fonteo.api;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sums up what ends up in a job's {@link VideoStats}.
+ */
+class StatsCollector implements FonteoListener {
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final Map<String, Long> phaseNanos = new ConcurrentHashMap<>();
+    /**
+     * Frames of the metrics which covered every tile at once.
+     */
+    private final AtomicLong sharedFrames = new AtomicLong();
+    private final Map<TileSelection.Tile, Long> tileFrames = new ConcurrentHashMap<>();
+
+    @Override
+    public void tileFinished(TileMetrics metrics) {
+        bytesWritten.addAndGet(metrics.getBytesWritten());
+        if (metrics.getX() < 0) {
+            sharedFrames.addAndGet(metrics.getFrames());
+        } else {
+            tileFrames.merge(new TileSelection.Tile(metrics.getX(), metrics.getY()), metrics.getFrames(), Long::sum);
+        }
+    }
+
+    @Override
+    public void phaseFinished(File video, String phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    Map<String, Long> getPhaseNanos() {
+        return phaseNanos;
+    }
+
+    long getFrames() {
+        return sharedFrames.get() + tileFrames.values().stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    /**
+     * @param tileCount number of tiles the metrics covering every tile stand for
+     */
+    long getTiles(int tileCount) {
+        return sharedFrames.get() * tileCount + tileFrames.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
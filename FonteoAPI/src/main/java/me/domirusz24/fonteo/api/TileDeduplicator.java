@@ -0,0 +1,160 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets only the first occurrence of every distinct tile through to the wrapped consumer.
+ * <p>
+ * Tiles are identified by a 128 bit murmur3 hash of their pixels. {@link #close()} writes {@value #INDEX_FILE},
+ * mapping every flattened index to the flattened index of the tile that was actually written for it: big-endian
+ * records of {@code (int flattenedIndex, int writtenIndex)} sorted by flattened index,
+ * after a header of {@code (int magic, int version, int entries)}.
+ */
+public class TileDeduplicator implements AutoCloseable {
+
+    public static final String INDEX_FILE = "dedup.index";
+    public static final int INDEX_MAGIC = 0x46444450;
+    public static final int INDEX_VERSION = 1;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final TileNaming naming;
+    private final Map<HashCode, Integer> uniqueTiles = new ConcurrentHashMap<>();
+    private final AtomicLong tiles = new AtomicLong();
+
+    private int[] writtenIndices = new int[1024];
+
+    public TileDeduplicator(TileNaming naming) {
+        this.naming = naming;
+    }
+
+    public static HashCode hash(FrameTile tile) {
+        Hasher hasher = HASH.newHasher();
+        hasher.putInt(tile.getWidth()).putInt(tile.getHeight());
+        for (int row = 0; row < tile.getHeight(); row++) {
+            hasher.putBytes(tile.getRow(row));
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * @return a consumer which forwards a tile to {@code unique} only if no identical tile was seen before
+     */
+    public TileConsumer filter(TileConsumer unique) {
+        return tile -> {
+            int index = naming.getFlattenedIndex(tile.getFrame(), tile.getX(), tile.getY());
+            int writtenIndex = uniqueTiles.computeIfAbsent(hash(tile), hash -> index);
+
+            tiles.incrementAndGet();
+            record(index, writtenIndex);
+
+            if (writtenIndex == index) {
+                unique.accept(tile);
+            }
+        };
+    }
+
+    public long getTiles() {
+        return tiles.get();
+    }
+
+    public long getUniqueTiles() {
+        return uniqueTiles.size();
+    }
+
+    /**
+     * @return how many tiles were received for every tile written
+     */
+    public double getRatio() {
+        return uniqueTiles.isEmpty() ? 1 : (double) getTiles() / getUniqueTiles();
+    }
+
+    /**
+     * @return the {@value #INDEX_FILE} mapping every received tile onto the written one
+     */
+    public byte[] getIndex() throws IOException {
+        int[] indices;
+        synchronized (this) {
+            indices = writtenIndices;
+        }
+
+        int entries = 0;
+        for (int writtenIndex : indices) {
+            if (writtenIndex != 0) {
+                entries++;
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + entries * 8);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(INDEX_MAGIC);
+            output.writeInt(INDEX_VERSION);
+            output.writeInt(entries);
+
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] != 0) {
+                    output.writeInt(i + 1);
+                    output.writeInt(indices[i]);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the flattened index of the written tile for every flattened index minus one, 0 where no tile was received
+     */
+    synchronized int[] getWrittenIndices() {
+        return writtenIndices.clone();
+    }
+
+    String getSummary() {
+        return String.format("Deduplicated %d tiles into %d unique tiles (%.2fx)", getTiles(), getUniqueTiles(), getRatio());
+    }
+
+    /**
+     * Writes the {@value #INDEX_FILE} into the output folder.
+     */
+    @Override
+    public void close() throws IOException {
+        Files.write(new File(naming.getFolder(), INDEX_FILE).toPath(), getIndex());
+    }
+
+    private synchronized void record(int index, int writtenIndex) {
+        if (index > writtenIndices.length) {
+            writtenIndices = Arrays.copyOf(writtenIndices, Math.max(index, writtenIndices.length * 2));
+        }
+        writtenIndices[index - 1] = writtenIndex;
+    }
+}
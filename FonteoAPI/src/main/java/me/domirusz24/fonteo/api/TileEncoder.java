@@ -0,0 +1,118 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+/**
+ * Encodes {@link FrameTile}s with ImageIO, following an {@link EncodingProfile} as far as ImageIO's writers allow.
+ */
+public class TileEncoder {
+
+    static {
+        // Encoded tiles are small, buffering them in temporary files only costs time.
+        ImageIO.setUseCache(false);
+    }
+
+    private final String extension;
+    @Getter
+    private final int imageType;
+    private final EncodingProfile profile;
+    private final TilePalette palette;
+
+    public TileEncoder(String extension) {
+        this(extension, EncodingProfile.DEFAULT, null);
+    }
+
+    /**
+     * @param palette palette of an indexed profile, null to write true color
+     */
+    public TileEncoder(String extension, EncodingProfile profile, TilePalette palette) {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(extension);
+
+        if (!writers.hasNext()) {
+            throw new IllegalArgumentException("No image writer available for extension: " + extension);
+        }
+
+        this.extension = extension;
+        this.imageType = writers.next().getOriginatingProvider().canEncodeImage(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB))
+                ? BufferedImage.TYPE_INT_ARGB
+                : BufferedImage.TYPE_INT_RGB;
+        this.profile = profile;
+        this.palette = palette;
+    }
+
+    /**
+     * @return the size of the written file
+     */
+    public long write(FrameTile tile, File file) throws IOException {
+        try (OutputStream output = Files.newOutputStream(file.toPath())) {
+            write(tile, output);
+        }
+        return file.length();
+    }
+
+    public byte[] encode(FrameTile tile) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        write(tile, output);
+        return output.toByteArray();
+    }
+
+    private void write(FrameTile tile, OutputStream output) throws IOException {
+        BufferedImage image = palette != null ? palette.toImage(tile) : tile.toImage(imageType);
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWriters(ImageTypeSpecifier.createFromRenderedImage(image), extension);
+        if (!writers.hasNext()) {
+            writers = ImageIO.getImageWritersBySuffix(extension);
+        }
+        ImageWriter writer = writers.next();
+
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), getWriteParam(writer));
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private ImageWriteParam getWriteParam(ImageWriter writer) {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        // Other writers treat the quality as a lossy one, where a high compression level would ruin the image.
+        if (profile.getCompressionLevel() >= 0 && extension.equalsIgnoreCase("png") && param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            // The png writer derives its deflate level from the quality as (1 - quality) * 9, rounded down.
+            param.setCompressionQuality(Math.max(0, 1 - (profile.getCompressionLevel() + 0.5f) / 9));
+        }
+        return param;
+    }
+}
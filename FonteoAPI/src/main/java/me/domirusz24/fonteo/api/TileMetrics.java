@@ -0,0 +1,83 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+
+import java.io.File;
+
+/**
+ * What it took to produce one tile sequence, or every tile at once when a single job produced them all.
+ * <p>
+ * On the {@link FonteoAPI.Engine#IN_JVM} engine every frame of a tile is encoded separately, there
+ * wall and queue time are summed over all frames of the tile.
+ */
+@Getter
+public class TileMetrics {
+
+    private final File video;
+    private final String tile;
+    /**
+     * Position of the tile, -1 when the metrics cover every tile.
+     */
+    private final int x;
+    private final int y;
+    private final long frames;
+    private final long wallNanos;
+    /**
+     * Time spent waiting for a free worker after the work was submitted.
+     */
+    private final long queueWaitNanos;
+    private final long bytesWritten;
+    /**
+     * Frames per second FFmpeg decoded the input at.
+     */
+    private final double decodeFps;
+    /**
+     * Processed seconds of video per second.
+     */
+    private final double speed;
+
+    public TileMetrics(File video, String tile, int x, int y, long frames, long wallNanos, long queueWaitNanos, long bytesWritten, double decodeFps, double speed) {
+        this.video = video;
+        this.tile = tile;
+        this.x = x;
+        this.y = y;
+        this.frames = frames;
+        this.wallNanos = wallNanos;
+        this.queueWaitNanos = queueWaitNanos;
+        this.bytesWritten = bytesWritten;
+        this.decodeFps = decodeFps;
+        this.speed = speed;
+    }
+
+    public TileMetrics withBytesWritten(long bytesWritten) {
+        return new TileMetrics(video, tile, x, y, frames, wallNanos, queueWaitNanos, bytesWritten, decodeFps, speed);
+    }
+
+    /**
+     * @return the metrics of this and another run over the same tile as if they were one, rates weighted by their frames
+     */
+    public TileMetrics plus(TileMetrics other) {
+        long total = frames + other.frames;
+        double weight = total == 0 ? 0.5 : frames / (double) total;
+        return new TileMetrics(video, tile, x, y, total, wallNanos + other.wallNanos, queueWaitNanos + other.queueWaitNanos, bytesWritten + other.bytesWritten,
+                decodeFps * weight + other.decodeFps * (1 - weight), speed * weight + other.speed * (1 - weight));
+    }
+}
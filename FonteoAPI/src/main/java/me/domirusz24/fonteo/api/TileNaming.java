@@ -0,0 +1,157 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes the final name of every written tile, so that files can be written under their
+ * flattened name straight away instead of being renamed afterwards.
+ */
+@Getter
+public class TileNaming {
+
+    private static final Pattern FRAME_NUMBER = Pattern.compile("%(0\\d+)?d");
+
+    private final File folder;
+    private final String format;
+    private final String extension;
+    private final String videoName;
+    private final int columns;
+    private final int rows;
+    private final FonteoAPI.FlattenVideoType flattenType;
+
+    private final String[] tilePatterns;
+
+    /**
+     * @param format name format of unflattened tiles, with {@code %x}, {@code %y} and {@code %d} placeholders
+     */
+    public TileNaming(File folder, String format, String extension, File video, int columns, int rows, FonteoAPI.FlattenVideoType flattenType) {
+        this.folder = folder;
+        this.format = format;
+        this.extension = extension;
+        this.videoName = getVideoName(video);
+        this.columns = columns;
+        this.rows = rows;
+        this.flattenType = flattenType;
+
+        this.tilePatterns = new String[columns * rows];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                tilePatterns[x + y * columns] = format.replaceAll("%x", String.valueOf(x)).replaceAll("%y", String.valueOf(y)) + "." + extension;
+            }
+        }
+    }
+
+    public static String getVideoName(File video) {
+        return video.getName().substring(0, video.getName().length() - 4);
+    }
+
+    /**
+     * @param frame frame number, starting at 1
+     * @return index of the tile in the flattened sequence, starting at 1
+     */
+    public static int getFlattenedIndex(int frame, int x, int y, int columns, int rows) {
+        return ((frame - 1) * rows * columns) + x + (y * columns) + 1;
+    }
+
+    public int getFlattenedIndex(int frame, int x, int y) {
+        return getFlattenedIndex(frame, x, y, columns, rows);
+    }
+
+    public String getName(int frame, int x, int y) {
+        if (flattenType == null) {
+            return getTileName(frame, x, y);
+        }
+        return getFlattenedName(getFlattenedIndex(frame, x, y));
+    }
+
+    /**
+     * @return name of the given frame inside the unflattened sequence of the given tile
+     */
+    public String getTileName(int frame, int x, int y) {
+        return formatFrameNumber(tilePatterns[x + y * columns], frame);
+    }
+
+    public String getFlattenedName(int index) {
+        if (flattenType == FonteoAPI.FlattenVideoType.CHAR_CODE) {
+            return "#" + FonteoAPI.getCharacterCode(index) + "." + extension;
+        }
+        return videoName + "-" + index + "." + extension;
+    }
+
+    public File getFile(int frame, int x, int y) {
+        return new File(folder, getName(frame, x, y));
+    }
+
+    /**
+     * @return image2 output pattern of the unflattened sequence of the given tile
+     */
+    public String getTileOutput(int x, int y) {
+        return new File(folder, tilePatterns[x + y * columns]).getAbsolutePath();
+    }
+
+    /**
+     * Splits the flattened sequence into ranges which can each be written by a single image2 output,
+     * with {@code %d} standing for the flattened index.
+     */
+    public List<IndexRange> getFlattenedRanges() {
+        String extension = "." + escape(this.extension);
+
+        if (flattenType == FonteoAPI.FlattenVideoType.CHAR_CODE) {
+            return List.of(
+                    new IndexRange(1, 9, "#uccc%d" + extension),
+                    new IndexRange(10, 99, "#ucc%d" + extension),
+                    new IndexRange(100, 999, "#ub%d" + extension),
+                    new IndexRange(1000, 9999, "#u%d" + extension),
+                    new IndexRange(10000, Integer.MAX_VALUE, "#%d" + extension)
+            );
+        }
+
+        return List.of(new IndexRange(1, Integer.MAX_VALUE, escape(videoName) + "-%d" + extension));
+    }
+
+    /**
+     * Replaces the image2 style {@code %d} / {@code %0Nd} frame placeholder with the given frame number.
+     */
+    public static String formatFrameNumber(String output, int frame) {
+        Matcher matcher = FRAME_NUMBER.matcher(output);
+        if (!matcher.find()) {
+            return output;
+        }
+        return output.substring(0, matcher.start()) + String.format(matcher.group(), frame) + output.substring(matcher.end());
+    }
+
+    private static String escape(String name) {
+        return name.replace("%", "%%");
+    }
+
+    /**
+     * @param first first flattened index of this range
+     * @param last last flattened index of this range, inclusive
+     * @param pattern image2 file name pattern
+     */
+    public record IndexRange(int first, int last, String pattern) {
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Palette shared by every tile of an {@link EncodingProfile#isIndexed() indexed} job, as written by FFmpeg's {@code palettegen}.
+ * Maps pixels to their nearest entry. Palette colors are looked up directly, other colors go through a fixed size cache
+ * keyed by the whole ARGB value, as tiles of a video share most of them.
+ */
+public class TilePalette {
+
+    private static final int CACHE_BITS = 16;
+
+    @Getter
+    private final IndexColorModel colorModel;
+    private final int[] colors;
+    private final Map<Integer, Byte> entries = new HashMap<>();
+    /**
+     * Color in the upper and entry index plus one in the lower half of each slot, zero while empty.
+     * A color only ever lands in one slot, which keeps the last color seen there.
+     */
+    private final AtomicLongArray cache = new AtomicLongArray(1 << CACHE_BITS);
+
+    private TilePalette(int[] colors) {
+        this.colors = colors;
+        for (int i = 0; i < colors.length; i++) {
+            entries.put(colors[i], (byte) i);
+        }
+
+        byte[] r = new byte[colors.length];
+        byte[] g = new byte[colors.length];
+        byte[] b = new byte[colors.length];
+        byte[] a = new byte[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            a[i] = (byte) (colors[i] >>> 24);
+            r[i] = (byte) (colors[i] >> 16);
+            g[i] = (byte) (colors[i] >> 8);
+            b[i] = (byte) colors[i];
+        }
+        this.colorModel = new IndexColorModel(8, colors.length, r, g, b, a);
+    }
+
+    /**
+     * @param file palette image, whose distinct pixels become the entries
+     */
+    public static TilePalette load(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unable to read palette: " + file.getName());
+        }
+
+        Set<Integer> colors = new LinkedHashSet<>();
+        for (int y = 0; y < image.getHeight() && colors.size() < 256; y++) {
+            for (int x = 0; x < image.getWidth() && colors.size() < 256; x++) {
+                colors.add(image.getRGB(x, y));
+            }
+        }
+        return new TilePalette(colors.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public int size() {
+        return colors.length;
+    }
+
+    public BufferedImage toImage(FrameTile tile) {
+        BufferedImage image = new BufferedImage(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+        int i = 0;
+        for (int y = 0; y < tile.getHeight(); y++) {
+            for (int x = 0; x < tile.getWidth(); x++) {
+                pixels[i++] = getIndex(tile.getPixel(x, y));
+            }
+        }
+        return image;
+    }
+
+    private byte getIndex(int color) {
+        Byte entry = entries.get(color);
+        if (entry != null) {
+            return entry;
+        }
+
+        int slot = color * 0x9E3779B9 >>> 32 - CACHE_BITS;
+        long cached = cache.getOpaque(slot);
+        if (cached != 0 && (int) (cached >>> 32) == color) {
+            return (byte) (cached - 1);
+        }
+
+        int index = findNearest(color);
+        cache.setOpaque(slot, (long) color << 32 | index + 1);
+        return (byte) index;
+    }
+
+    private int findNearest(int color) {
+        int nearest = 0;
+        long nearestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < colors.length; i++) {
+            long distance = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                int difference = (color >>> shift & 0xFF) - (colors[i] >>> shift & 0xFF);
+                distance += (long) difference * difference;
+            }
+            if (distance < nearestDistance) {
+                nearest = i;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+}
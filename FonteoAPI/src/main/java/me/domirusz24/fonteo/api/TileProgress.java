@@ -0,0 +1,77 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import net.bramp.ffmpeg.progress.Progress;
+import net.bramp.ffmpeg.progress.ProgressListener;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards FFmpeg's progress of one job to the listener, and keeps the last update for the job's {@link TileMetrics}.
+ */
+class TileProgress implements ProgressListener {
+
+    private final File video;
+    private final String tile;
+    private final FonteoListener listener;
+    private final double durationNanos;
+    private volatile Progress last;
+
+    TileProgress(File video, double durationSeconds, String tile, FonteoListener listener) {
+        this.video = video;
+        this.tile = tile;
+        this.listener = listener;
+        this.durationNanos = durationSeconds * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public void progress(Progress progress) {
+        last = progress;
+
+        double percentage = progress.out_time_ns / durationNanos;
+
+        if (percentage > 3) {
+            percentage = 0;
+        } else if (percentage > 1) {
+            percentage = 1;
+        }
+
+        listener.progress(video, tile, percentage, getFps(progress), progress.speed);
+    }
+
+    TileMetrics getMetrics(int x, int y, long wallNanos, long queueWaitNanos, long bytesWritten) {
+        Progress progress = last;
+        return getMetrics(x, y, progress == null ? 0 : progress.frame, wallNanos, queueWaitNanos, bytesWritten);
+    }
+
+    /**
+     * @param frames frames written for the tile, or for each tile when the metrics cover every tile
+     */
+    TileMetrics getMetrics(int x, int y, long frames, long wallNanos, long queueWaitNanos, long bytesWritten) {
+        Progress progress = last;
+        return new TileMetrics(video, tile, x, y, frames, wallNanos, queueWaitNanos,
+                bytesWritten, progress == null ? 0 : getFps(progress), progress == null ? 0 : progress.speed);
+    }
+
+    private static double getFps(Progress progress) {
+        return progress.fps == null ? 0 : progress.fps.doubleValue();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs independent FFmpeg jobs concurrently while keeping the total amount of FFmpeg threads
+ * within a fixed budget, so that concurrent jobs do not oversubscribe the machine.
+ * <p>
+ * A scheduler can be shared by several callers of {@link #run(List)}, e.g. one per video of a batch.
+ * Their jobs then go through one queue served by {@code parallelism} workers, which take turns between
+ * the callers, so that a video with many jobs cannot starve the others.
+ */
+public class TileScheduler implements AutoCloseable {
+
+    private final int parallelism;
+    private final int threadBudget;
+    private final boolean shared;
+
+    private final Deque<Group> groups = new ArrayDeque<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private boolean closed;
+
+    public TileScheduler(int parallelism, int threadBudget) {
+        this(parallelism, threadBudget, false);
+    }
+
+    /**
+     * @param shared whether jobs of several callers will run at the same time,
+     *               in which case every job only gets its share of the thread budget of a fully busy scheduler
+     */
+    public TileScheduler(int parallelism, int threadBudget, boolean shared) {
+        if (parallelism < 1 || threadBudget < 1) {
+            throw new IllegalArgumentException("Parallelism and thread budget have to be positive");
+        }
+
+        this.parallelism = parallelism;
+        this.threadBudget = threadBudget;
+        this.shared = shared;
+    }
+
+    public static int availableCores() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param jobs amount of jobs that will be handed to {@link #run(List)}
+     * @return how many of them will run at the same time
+     */
+    public int getConcurrency(int jobs) {
+        if (shared) {
+            return parallelism;
+        }
+        return Math.max(1, Math.min(parallelism, jobs));
+    }
+
+    /**
+     * @param jobs amount of jobs that will be handed to {@link #run(List)}
+     * @return the FFmpeg {@code -threads} value each of them should use
+     */
+    public int getThreadsPerJob(int jobs) {
+        return Math.max(1, threadBudget / getConcurrency(jobs));
+    }
+
+    /**
+     * Runs all jobs and blocks until they are done. The first failing job stops the remaining
+     * ones from being started and its exception is rethrown.
+     */
+    public void run(List<? extends Runnable> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        // Workers run the jobs for whichever job the caller works for, so that cancelling it reaches them.
+        jobs = jobs.stream().map(JobControl::propagate).toList();
+
+        if (!shared && getConcurrency(jobs.size()) == 1) {
+            jobs.forEach(Runnable::run);
+            return;
+        }
+
+        Group group = new Group(jobs);
+
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Scheduler is closed");
+            }
+            startWorkers();
+            groups.addLast(group);
+            notifyAll();
+        }
+
+        try {
+            group.await();
+        } catch (InterruptedException e) {
+            cancel(group);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        if (group.failure instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        } else if (group.failure instanceof Error error) {
+            throw error;
+        } else if (group.failure != null) {
+            throw new RuntimeException(group.failure);
+        }
+    }
+
+    /**
+     * Lets the workers exit once every queued job is done.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private void startWorkers() {
+        for (int i = workers.size(); i < parallelism; i++) {
+            Thread thread = new Thread(this::work, "fonteo-tile-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(thread);
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Group group;
+            Runnable job;
+
+            synchronized (this) {
+                while (groups.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (groups.isEmpty()) {
+                    return;
+                }
+
+                group = groups.pollFirst();
+                job = group.jobs.next();
+                if (group.jobs.hasNext()) {
+                    groups.addLast(group);
+                }
+            }
+
+            Throwable failure = null;
+            try {
+                job.run();
+            } catch (Throwable e) {
+                failure = e;
+            }
+
+            if (failure != null) {
+                cancel(group);
+            }
+            group.done(failure);
+        }
+    }
+
+    private synchronized void cancel(Group group) {
+        groups.remove(group);
+        group.cancelRemaining();
+    }
+
+    private static class Group {
+        private final Iterator<? extends Runnable> jobs;
+        private int pending;
+        private Throwable failure;
+
+        private Group(List<? extends Runnable> jobs) {
+            this.jobs = jobs.iterator();
+            this.pending = jobs.size();
+        }
+
+        private synchronized void done(Throwable failure) {
+            if (failure != null && this.failure == null) {
+                this.failure = failure;
+            }
+            pending--;
+            notifyAll();
+        }
+
+        private synchronized void cancelRemaining() {
+            while (jobs.hasNext()) {
+                jobs.next();
+                pending--;
+            }
+            notifyAll();
+        }
+
+        private synchronized void await() throws InterruptedException {
+            while (pending > 0) {
+                wait();
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Limits a job to some of the tiles and to a range of frames, for re-rendering part of a video into an existing output.
+ * <p>
+ * Everything that is written keeps the name and flattened index it gets in a run over the whole video,
+ * so the output of a partial run can be merged into the folder of a full one.
+ * A time window selects every frame shown in it, frame {@code n} being shown from {@code (n - 1) / fps}.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class TileSelection {
+
+    public static final TileSelection ALL = TileSelection.builder().build();
+
+    /**
+     * Selected tile positions, null for every tile of the grid.
+     */
+    private final Set<Tile> tiles;
+
+    /**
+     * First selected frame, starting at 1.
+     */
+    @Builder.Default
+    private final int firstFrame = 1;
+
+    /**
+     * Last selected frame, inclusive, -1 for every frame until the end.
+     */
+    @Builder.Default
+    private final int lastFrame = -1;
+
+    /**
+     * Start of the selected time window in seconds, -1 for none.
+     */
+    @Builder.Default
+    private final double startSeconds = -1;
+
+    /**
+     * End of the selected time window in seconds, exclusive, -1 for none.
+     */
+    @Builder.Default
+    private final double endSeconds = -1;
+
+    /**
+     * @return whether the selection limits anything at all
+     */
+    public boolean isPartial() {
+        return tiles != null || firstFrame > 1 || lastFrame >= 0 || startSeconds > 0 || endSeconds >= 0;
+    }
+
+    public boolean isAllTiles() {
+        return tiles == null;
+    }
+
+    public boolean contains(int x, int y) {
+        return tiles == null || tiles.contains(new Tile(x, y));
+    }
+
+    /**
+     * @return the first selected frame at the given frame rate, combining the frame range and the time window
+     */
+    public int getFirstFrame(int fps) {
+        if (startSeconds <= 0) {
+            return firstFrame;
+        }
+        return Math.max(firstFrame, (int) Math.floor(startSeconds * fps + 1e-6) + 1);
+    }
+
+    /**
+     * @return the last selected frame at the given frame rate, combining the frame range and the time window, -1 for the end
+     */
+    public int getLastFrame(int fps) {
+        if (endSeconds < 0) {
+            return lastFrame;
+        }
+        int last = (int) Math.ceil(endSeconds * fps - 1e-6);
+        return lastFrame < 0 ? last : Math.min(lastFrame, last);
+    }
+
+    /**
+     * @return the amount of selected tiles of a grid with the given size
+     */
+    public int getTileCount(int columns, int rows) {
+        if (tiles == null) {
+            return columns * rows;
+        }
+        return (int) tiles.stream().filter(tile -> tile.x() < columns && tile.y() < rows).count();
+    }
+
+    /**
+     * Limits the segments to the selected frames, keeping their numbering. Segments without any selected frame are dropped.
+     */
+    public List<VideoSegment> restrict(List<VideoSegment> segments, int fps) {
+        int first = getFirstFrame(fps);
+        int last = getLastFrame(fps);
+
+        if (first <= 1 && last < 0) {
+            return segments;
+        }
+
+        List<VideoSegment> restricted = new ArrayList<>();
+        for (VideoSegment segment : segments) {
+            int start = Math.max(segment.getFirstFrame(), first);
+            int end = segment.getFrames() >= 0 ? segment.getFirstFrame() + segment.getFrames() - 1 : -1;
+            if (last >= 0) {
+                end = end < 0 ? last : Math.min(end, last);
+            }
+
+            if (end < 0 || start <= end) {
+                restricted.add(new VideoSegment(segment.getIndex(), start, end < 0 ? -1 : end - start + 1, (start - 1) / (double) fps, segment.isKeyframesOnly()));
+            }
+        }
+        return restricted;
+    }
+
+    /**
+     * Checks that the selection fits a grid of the given size.
+     */
+    public void validate(int columns, int rows) {
+        if (tiles != null) {
+            for (Tile tile : tiles) {
+                if (tile.x() < 0 || tile.y() < 0 || tile.x() >= columns || tile.y() >= rows) {
+                    throw new IllegalArgumentException("Tile " + tile + " is outside of the " + columns + "x" + rows + " grid");
+                }
+            }
+            if (tiles.isEmpty()) {
+                throw new IllegalArgumentException("No tiles selected");
+            }
+        }
+        if (firstFrame < 1 || lastFrame >= 0 && lastFrame < firstFrame) {
+            throw new IllegalArgumentException("Invalid frame range " + firstFrame + "-" + lastFrame);
+        }
+        if (endSeconds >= 0 && endSeconds <= Math.max(0, startSeconds)) {
+            throw new IllegalArgumentException("Invalid time window " + startSeconds + "-" + endSeconds);
+        }
+    }
+
+    /**
+     * @param tiles tile positions like {@code "0:0,2:1"}, x before y
+     */
+    public static Set<Tile> parseTiles(String tiles) {
+        Set<Tile> parsed = new LinkedHashSet<>();
+        for (String tile : tiles.split(",")) {
+            String[] position = tile.trim().split(":");
+            if (position.length != 2) {
+                throw new IllegalArgumentException("Invalid tile position, expected x:y: " + tile);
+            }
+            parsed.add(new Tile(Integer.parseInt(position[0].trim()), Integer.parseInt(position[1].trim())));
+        }
+        return parsed;
+    }
+
+    public record Tile(int x, int y) {
+        @Override
+        public String toString() {
+            return x + ":" + y;
+        }
+    }
+}
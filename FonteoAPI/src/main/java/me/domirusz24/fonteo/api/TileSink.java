@@ -0,0 +1,48 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import java.io.IOException;
+
+/**
+ * Receives every produced tile, in place of the files of {@link FonteoAPI.OutputType#FILES},
+ * see {@link ProcessOptions#getSink()}. Tiles can be uploaded or handed to a next stage as they are produced,
+ * instead of being written to disk and read back.
+ * <p>
+ * Built in are {@link DirectoryTileSink}, writing the same files a run without a sink does,
+ * {@link InMemoryTileSink} and {@link CallbackTileSink}.
+ */
+@FunctionalInterface
+public interface TileSink {
+
+    /**
+     * Called like {@link TileConsumer#accept}, the encoded data stays valid after this method returns.
+     *
+     * @param index flattened index of the tile, see {@link TileNaming#getFlattenedIndex(int, int, int)}
+     * @param data the tile encoded as the job's extension and {@link EncodingProfile}, null when {@link #isEncoded()} is false
+     */
+    void accept(FrameTile tile, int index, byte[] data) throws IOException;
+
+    /**
+     * @return whether the tiles are encoded before they are handed over, false for sinks only reading the pixels
+     */
+    default boolean isEncoded() {
+        return true;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access reader of a tile store written by {@link FonteoAPI.OutputType#STORE}, a single file holding every tile.
+ * <p>
+ * The file is memory mapped, so {@link #getTile(int)} returns a view of the payload without reading or copying anything.
+ * Java offers no way to unmap a file, so {@link #close()} only drops the reader's mappings and fails later reads,
+ * the file stays mapped until they and every buffer returned by {@link #getTile(int)} are garbage collected.
+ * Until then Windows refuses to delete or replace it.
+ * Layout, big-endian:
+ * <ul>
+ *     <li>a {@value #HEADER_SIZE} byte header of {@code (int magic, int version, int tileWidth, int tileHeight, int columns,
+ *     int rows, int codec, int entries, long tableOffset, byte[16] extension)}, zero padded,</li>
+ *     <li>the payloads, none of which crosses a multiple of {@value #CHUNK_SIZE} bytes,</li>
+ *     <li>at {@code tableOffset}, {@code entries} records of {@code (long offset, int length)} ordered by flattened index
+ *     starting at 1, with a length of 0 for tiles that were not written. Deduplicated tiles share one payload.</li>
+ * </ul>
+ */
+@Getter
+public class TileStore implements AutoCloseable {
+
+    public static final String EXTENSION = "tiles";
+    public static final int MAGIC = 0x46545354;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int TABLE_ENTRY_SIZE = 12;
+    /**
+     * Size of the regions the file is mapped in, as a single mapping can not exceed 2 GiB.
+     */
+    public static final long CHUNK_SIZE = 1L << 30;
+
+    private final File file;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int columns;
+    private final int rows;
+    private final Codec codec;
+    private final int entries;
+    /**
+     * Image format of {@link Codec#IMAGE} payloads.
+     */
+    private final String extension;
+
+    @Getter(lombok.AccessLevel.NONE)
+    private volatile MappedByteBuffer[] chunks;
+    @Getter(lombok.AccessLevel.NONE)
+    private volatile ByteBuffer table;
+
+    private TileStore(File file, ByteBuffer header, MappedByteBuffer[] chunks, ByteBuffer table) {
+        this.file = file;
+        this.tileWidth = header.getInt(8);
+        this.tileHeight = header.getInt(12);
+        this.columns = header.getInt(16);
+        this.rows = header.getInt(20);
+        this.codec = Codec.values()[header.getInt(24)];
+        this.entries = header.getInt(28);
+
+        byte[] extension = new byte[16];
+        header.get(40, extension);
+        this.extension = new String(extension, StandardCharsets.US_ASCII).trim();
+
+        this.chunks = chunks;
+        this.table = table;
+    }
+
+    public static TileStore open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a tile store: " + file.getName());
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a tile store: " + file.getName());
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported tile store version " + header.getInt(4) + ": " + file.getName());
+            }
+
+            long tableOffset = header.getLong(32);
+            long tableSize = (long) header.getInt(28) * TABLE_ENTRY_SIZE;
+            if (tableOffset + tableSize > size) {
+                throw new IOException("Truncated tile store: " + file.getName());
+            }
+
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((tableOffset + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = i * CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, tableOffset - start));
+            }
+
+            return new TileStore(file, header, chunks, channel.map(FileChannel.MapMode.READ_ONLY, tableOffset, tableSize));
+        }
+    }
+
+    public int getFlattenedIndex(int frame, int x, int y) {
+        return TileNaming.getFlattenedIndex(frame, x, y, columns, rows);
+    }
+
+    /**
+     * @return whether a tile was written for the given flattened index
+     */
+    public boolean contains(int index) {
+        return index >= 1 && index <= entries && getTable().getInt((index - 1) * TABLE_ENTRY_SIZE + 8) > 0;
+    }
+
+    /**
+     * @param index flattened index of the tile, starting at 1
+     * @return a read-only view of the tile's payload inside the mapped file, laid out as described by {@link #getCodec()}
+     * @throws IndexOutOfBoundsException when no tile was written for the index
+     */
+    public ByteBuffer getTile(int index) {
+        if (!contains(index)) {
+            throw new IndexOutOfBoundsException("No tile " + index + " in " + file.getName());
+        }
+
+        ByteBuffer table = getTable();
+        MappedByteBuffer[] chunks = this.chunks;
+        int entry = (index - 1) * TABLE_ENTRY_SIZE;
+        long offset = table.getLong(entry);
+        int length = table.getInt(entry + 8);
+
+        if (chunks == null) {
+            throw new IllegalStateException("Tile store is closed: " + file.getName());
+        }
+        return chunks[(int) (offset / CHUNK_SIZE)].slice((int) (offset % CHUNK_SIZE), length).asReadOnlyBuffer();
+    }
+
+    /**
+     * @param frame frame number, starting at 1
+     */
+    public ByteBuffer getTile(int frame, int x, int y) {
+        return getTile(getFlattenedIndex(frame, x, y));
+    }
+
+    /**
+     * Decodes the tile, whatever its codec. Prefer {@link #getTile(int)} for {@link Codec#RAW} stores.
+     */
+    public BufferedImage getImage(int index) throws IOException {
+        ByteBuffer payload = getTile(index);
+
+        if (codec == Codec.IMAGE) {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image == null) {
+                throw new IOException("Unable to decode tile " + index + " as " + extension);
+            }
+            return image;
+        }
+
+        if (codec == Codec.DEFLATE) {
+            payload = inflate(payload, RawFrame.getFrameSize(tileWidth, tileHeight));
+        }
+
+        BufferedImage image = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_ARGB);
+        payload.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        return image;
+    }
+
+    /**
+     * Drops the mappings, every later read throws {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        chunks = null;
+        table = null;
+    }
+
+    private ByteBuffer getTable() {
+        ByteBuffer table = this.table;
+        if (table == null) {
+            throw new IllegalStateException("Tile store is closed: " + file.getName());
+        }
+        return table;
+    }
+
+    private static ByteBuffer inflate(ByteBuffer payload, int size) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload);
+            ByteBuffer pixels = ByteBuffer.allocate(size);
+            inflater.inflate(pixels);
+            if (pixels.hasRemaining()) {
+                throw new IOException("Truncated tile payload");
+            }
+            return pixels.flip();
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public enum Codec {
+        /**
+         * Packed BGRA pixels row after row, which read as little-endian ints are ARGB.
+         */
+        RAW,
+        /**
+         * {@link #RAW} pixels compressed with deflate.
+         */
+        DEFLATE,
+        /**
+         * Images encoded with ImageIO in the store's {@link #getExtension() extension}.
+         */
+        IMAGE
+    }
+}
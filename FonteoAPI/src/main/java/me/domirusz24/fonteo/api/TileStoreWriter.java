@@ -0,0 +1,229 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.Deflater;
+
+/**
+ * Writes tiles into a single {@link TileStore} file, appending payloads in the order they arrive.
+ * <p>
+ * The offset table is kept in memory and written by {@link #close()}, which also fills in the header.
+ * Like {@link ArchiveWriter}, the store is written with a {@code .part} suffix and only moved into place when complete.
+ */
+public class TileStoreWriter implements AutoCloseable {
+
+    private final Path target;
+    private final Path partial;
+    private final FileChannel channel;
+    private final TileStore.Codec codec;
+    private final String extension;
+    private final TileEncoder encoder;
+    private final int compressionLevel;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int columns;
+    private final int rows;
+
+    private long position = TileStore.HEADER_SIZE;
+    private long[] offsets = new long[1024];
+    private int[] lengths = new int[1024];
+    private int entries;
+
+    /**
+     * @param compressionLevel deflate level of {@link TileStore.Codec#DEFLATE} payloads from 1 to 9, 0 for the default level
+     */
+    public TileStoreWriter(File file, TileStore.Codec codec, String extension, int compressionLevel, int tileWidth, int tileHeight, int columns, int rows) throws IOException {
+        this(file, codec, extension, codec == TileStore.Codec.IMAGE ? new TileEncoder(extension) : null, compressionLevel, tileWidth, tileHeight, columns, rows);
+    }
+
+    /**
+     * @param encoder encodes {@link TileStore.Codec#IMAGE} payloads, ignored by the other codecs
+     */
+    public TileStoreWriter(File file, TileStore.Codec codec, String extension, TileEncoder encoder, int compressionLevel, int tileWidth, int tileHeight, int columns, int rows) throws IOException {
+        if (extension.length() > 16) {
+            throw new IllegalArgumentException("Extension too long for a tile store: " + extension);
+        }
+
+        this.target = file.toPath();
+        this.partial = target.resolveSibling(target.getFileName() + ".part");
+        this.codec = codec;
+        this.extension = extension;
+        this.encoder = codec == TileStore.Codec.IMAGE ? Objects.requireNonNull(encoder, "encoder") : null;
+        this.compressionLevel = compressionLevel > 0 ? Math.min(compressionLevel, Deflater.BEST_COMPRESSION) : Deflater.DEFAULT_COMPRESSION;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.columns = columns;
+        this.rows = rows;
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        this.channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return the store the given output path stands for, which gets the {@value TileStore#EXTENSION} extension unless it already has it
+     */
+    public static File getStoreFile(File output) {
+        return output.getName().toLowerCase().endsWith("." + TileStore.EXTENSION) ? output : new File(output.getPath() + "." + TileStore.EXTENSION);
+    }
+
+    /**
+     * Encodes and appends the tile. May be called from several threads at once, the encoding runs in parallel.
+     *
+     * @return the size of the payload
+     */
+    public long add(FrameTile tile, int flattenedIndex) throws IOException {
+        byte[] payload = switch (codec) {
+            case RAW -> getPixels(tile);
+            case DEFLATE -> deflate(getPixels(tile));
+            case IMAGE -> encoder.encode(tile);
+        };
+
+        writeFully(ByteBuffer.wrap(payload), reserve(flattenedIndex, payload.length));
+        return payload.length;
+    }
+
+    /**
+     * Points the given flattened index at the payload already written for another one.
+     */
+    public synchronized void alias(int flattenedIndex, int writtenIndex) {
+        if (flattenedIndex == writtenIndex || writtenIndex > entries || lengths[writtenIndex - 1] == 0) {
+            return;
+        }
+        ensureCapacity(flattenedIndex);
+        offsets[flattenedIndex - 1] = offsets[writtenIndex - 1];
+        lengths[flattenedIndex - 1] = lengths[writtenIndex - 1];
+        entries = Math.max(entries, flattenedIndex);
+    }
+
+    /**
+     * Writes the offset table and the header, then moves the store to its final location.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        long tableOffset = position;
+
+        ByteBuffer table = ByteBuffer.allocate(entries * TileStore.TABLE_ENTRY_SIZE);
+        for (int i = 0; i < entries; i++) {
+            table.putLong(offsets[i]).putInt(lengths[i]);
+        }
+        writeFully(table.flip(), tableOffset);
+
+        ByteBuffer header = ByteBuffer.allocate(TileStore.HEADER_SIZE);
+        header.putInt(TileStore.MAGIC)
+                .putInt(TileStore.VERSION)
+                .putInt(tileWidth)
+                .putInt(tileHeight)
+                .putInt(columns)
+                .putInt(rows)
+                .putInt(codec.ordinal())
+                .putInt(entries)
+                .putLong(tableOffset)
+                .put(extension.getBytes(StandardCharsets.US_ASCII));
+        writeFully(header.clear(), 0);
+
+        channel.force(false);
+        channel.close();
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Discards the partially written store.
+     */
+    public synchronized void abort() {
+        try {
+            channel.close();
+            Files.deleteIfExists(partial);
+        } catch (IOException e) {
+            System.out.println("Failed to delete partial tile store: " + partial.getFileName());
+        }
+    }
+
+    /**
+     * Reserves room for a payload, moving it to the next chunk when it would cross a chunk boundary.
+     */
+    private synchronized long reserve(int flattenedIndex, int length) {
+        if (position / TileStore.CHUNK_SIZE != (position + length - 1) / TileStore.CHUNK_SIZE) {
+            position = (position / TileStore.CHUNK_SIZE + 1) * TileStore.CHUNK_SIZE;
+        }
+
+        long offset = position;
+        position += length;
+
+        ensureCapacity(flattenedIndex);
+        offsets[flattenedIndex - 1] = offset;
+        lengths[flattenedIndex - 1] = length;
+        entries = Math.max(entries, flattenedIndex);
+        return offset;
+    }
+
+    private void ensureCapacity(int flattenedIndex) {
+        if (flattenedIndex > offsets.length) {
+            int capacity = Math.max(flattenedIndex, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+    }
+
+    private static byte[] getPixels(FrameTile tile) {
+        byte[] pixels = new byte[RawFrame.getFrameSize(tile.getWidth(), tile.getHeight())];
+        int rowSize = tile.getWidth() * RawFrame.BYTES_PER_PIXEL;
+        for (int row = 0; row < tile.getHeight(); row++) {
+            tile.getRow(row).get(0, pixels, row * rowSize, rowSize);
+        }
+        return pixels;
+    }
+
+    private byte[] deflate(byte[] pixels) {
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            deflater.setInput(pixels);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(pixels.length / 2);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
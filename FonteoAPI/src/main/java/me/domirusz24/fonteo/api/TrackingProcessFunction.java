@@ -0,0 +1,40 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import net.bramp.ffmpeg.ProcessFunction;
+import net.bramp.ffmpeg.RunProcessFunction;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Starts FFmpeg like the default {@link RunProcessFunction}, registering every process with the job it runs for.
+ */
+class TrackingProcessFunction implements ProcessFunction {
+
+    private final RunProcessFunction delegate = new RunProcessFunction();
+
+    @Override
+    public Process run(List<String> args) throws IOException {
+        Process process = delegate.run(args);
+        JobControl.track(process);
+        return process;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A part of the input timeline processed by its own FFmpeg jobs.
+ * <p>
+ * Segments start on the output frame grid right at a keyframe, so input seeking lands on that keyframe and
+ * only decodes less than one output frame past it. Every segment numbers its frames from {@link #firstFrame},
+ * which keeps {@code %d} and flattened indices the same as in a run over the whole video.
+ */
+@Getter
+public class VideoSegment {
+
+    private final int index;
+    /**
+     * Output frame number of the first frame of this segment, starting at 1.
+     */
+    private final int firstFrame;
+    /**
+     * Amount of output frames in this segment, -1 for the last segment which runs until the end of the input.
+     */
+    private final int frames;
+    private final double startSeconds;
+    /**
+     * Whether only the keyframes of this segment are decoded, the fps filter repeating each one until the next.
+     */
+    private final boolean keyframesOnly;
+
+    public VideoSegment(int index, int firstFrame, int frames, double startSeconds) {
+        this(index, firstFrame, frames, startSeconds, false);
+    }
+
+    public VideoSegment(int index, int firstFrame, int frames, double startSeconds, boolean keyframesOnly) {
+        this.index = index;
+        this.firstFrame = firstFrame;
+        this.frames = frames;
+        this.startSeconds = startSeconds;
+        this.keyframesOnly = keyframesOnly;
+    }
+
+    public static VideoSegment whole() {
+        return new VideoSegment(0, 1, -1, 0);
+    }
+
+    public boolean isWhole() {
+        return firstFrame == 1 && frames == -1;
+    }
+
+    /**
+     * @return this segment decoding only keyframes, see {@link FonteoAPI.Sampling#KEYFRAMES}
+     */
+    public VideoSegment withKeyframesOnly() {
+        return new VideoSegment(index, firstFrame, frames, startSeconds, true);
+    }
+
+    /**
+     * Input options seeking to this segment and, unless it is the last one, stopping one frame after its end.
+     */
+    public List<String> getInputArgs(int fps) {
+        List<String> args = new ArrayList<>();
+        if (keyframesOnly) {
+            args.add("-skip_frame");
+            args.add("nokey");
+        }
+        if (firstFrame > 1) {
+            args.add("-ss");
+            args.add(formatSeconds(startSeconds));
+        }
+        if (frames >= 0) {
+            args.add("-t");
+            args.add(formatSeconds((frames + 1) / (double) fps));
+        }
+        return args;
+    }
+
+    /**
+     * Adds {@link #getInputArgs(int)} to the builder, which rejects an empty list of extra arguments.
+     */
+    public FFmpegBuilder addInputArgs(FFmpegBuilder builder, int fps) {
+        List<String> args = getInputArgs(fps);
+        return args.isEmpty() ? builder : builder.addExtraArgs(args.toArray(new String[0]));
+    }
+
+    /**
+     * Output options numbering the images from {@link #firstFrame} and, unless this is the last segment, limiting their amount.
+     */
+    public List<String> getOutputArgs() {
+        List<String> args = new ArrayList<>();
+        args.add("-start_number");
+        args.add(String.valueOf(firstFrame));
+        if (frames >= 0) {
+            args.add("-frames:v");
+            args.add(String.valueOf(frames));
+        }
+        return args;
+    }
+
+    /**
+     * @return length of the segment in seconds, the last one running until the end of the input
+     */
+    public double getDuration(FFmpegProbeResult in, int fps) {
+        if (frames >= 0) {
+            return frames / (double) fps;
+        }
+        return Math.max(0, in.getFormat().duration - startSeconds);
+    }
+
+    private static String formatSeconds(double seconds) {
+        return String.format(Locale.ROOT, "%.6f", seconds);
+    }
+
+    /**
+     * Splits the timeline into about {@code amount} segments of similar length, each one starting at a keyframe.
+     *
+     * @param keyframes presentation times of the keyframes in seconds, in ascending order
+     * @param startTime start time of the input, which {@code -ss} and the output frames count from
+     */
+    public static List<VideoSegment> split(List<Double> keyframes, double startTime, double duration, int fps, int amount) {
+        keyframes = keyframes.stream().map(time -> time - startTime).toList();
+
+        List<Integer> firstFrames = new ArrayList<>();
+        firstFrames.add(1);
+
+        int keyframe = 0;
+        for (int i = 1; i < amount; i++) {
+            double target = duration * i / amount;
+
+            while (keyframe + 1 < keyframes.size() && Math.abs(keyframes.get(keyframe + 1) - target) <= Math.abs(keyframes.get(keyframe) - target)) {
+                keyframe++;
+            }
+            if (keyframe >= keyframes.size()) {
+                break;
+            }
+
+            // First output frame at or after the keyframe, frame n being shown at (n - 1) / fps.
+            int firstFrame = (int) Math.ceil(keyframes.get(keyframe) * fps - 1e-6) + 1;
+            if (firstFrame > firstFrames.get(firstFrames.size() - 1) && (firstFrame - 1) / (double) fps < duration) {
+                firstFrames.add(firstFrame);
+            }
+        }
+
+        List<VideoSegment> segments = new ArrayList<>(firstFrames.size());
+        for (int i = 0; i < firstFrames.size(); i++) {
+            int firstFrame = firstFrames.get(i);
+            int frames = i + 1 < firstFrames.size() ? firstFrames.get(i + 1) - firstFrame : -1;
+            segments.add(new VideoSegment(i, firstFrame, frames, (firstFrame - 1) / (double) fps));
+        }
+        return segments;
+    }
+
+    /**
+     * Splits the timeline into one segment per output frame, each one seeking to the frame on its own,
+     * see {@link FonteoAPI.Sampling#SEEK}.
+     */
+    public static List<VideoSegment> samples(double duration, int fps) {
+        int amount = Math.max(1, (int) Math.round(duration * fps));
+
+        List<VideoSegment> segments = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            segments.add(new VideoSegment(i, i + 1, 1, i / (double) fps));
+        }
+        return segments;
+    }
+
+    /**
+     * Picks the cheapest way of sampling the timeline at fps which stays within the tolerance, for {@link FonteoAPI.Sampling#AUTO}.
+     * Keyframes alone do when every output frame is close enough to the keyframe standing in for it. Seeking pays off when
+     * there is at least one keyframe per output frame, as every seek then decodes fewer frames than lie between two output frames.
+     *
+     * @param keyframes presentation times of the keyframes in seconds, in ascending order
+     * @param startTime start time of the input, which the output frames count from
+     * @param sourceFps frame rate of the input, 0 when unknown
+     * @param tolerance seconds an output frame may be off its exact time, negative for half a frame at fps
+     */
+    public static FonteoAPI.Sampling chooseSampling(List<Double> keyframes, double startTime, double duration, double sourceFps, int fps, double tolerance) {
+        if (keyframes.isEmpty() || duration <= 0 || sourceFps > 0 && sourceFps < fps * 2) {
+            // Hardly any input frame is dropped anyway.
+            return FonteoAPI.Sampling.EXACT;
+        }
+        if (tolerance < 0) {
+            tolerance = 0.5 / fps;
+        }
+        keyframes = keyframes.stream().map(time -> time - startTime).toList();
+
+        // Frame n is shown at (n - 1) / fps, the fps filter fills it with the last input frame before half a frame later.
+        double maxError = 0;
+        int keyframe = 0;
+        int amount = Math.max(1, (int) Math.round(duration * fps));
+        for (int i = 0; i < amount; i++) {
+            double time = i / (double) fps;
+            while (keyframe + 1 < keyframes.size() && keyframes.get(keyframe + 1) < time + 0.5 / fps) {
+                keyframe++;
+            }
+            maxError = Math.max(maxError, Math.abs(time - keyframes.get(keyframe)));
+        }
+
+        if (maxError <= tolerance) {
+            return FonteoAPI.Sampling.KEYFRAMES;
+        }
+        return duration / keyframes.size() <= 1.0 / fps ? FonteoAPI.Sampling.SEEK : FonteoAPI.Sampling.EXACT;
+    }
+
+    /**
+     * Reads the keyframe times of the first video stream from its packets, without decoding anything.
+     * They are presentation times, which do not start at 0 when the input has a start time.
+     */
+    public static List<Double> probeKeyframes(FFprobe ffprobe, File video) throws IOException {
+        List<String> command = ffprobe.path(List.of(
+                "-v", "error",
+                "-select_streams", "v:0",
+                "-show_entries", "packet=pts_time,flags",
+                "-of", "csv=p=0",
+                video.getAbsolutePath()
+        ));
+
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        JobControl.track(process);
+        List<Double> keyframes = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length >= 2 && fields[1].startsWith("K") && !fields[0].equals("N/A")) {
+                    keyframes.add(Double.parseDouble(fields[0]));
+                }
+            }
+        }
+
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("ffprobe failed to read packets of " + video.getName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        keyframes.sort(null);
+        return keyframes;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a single processed video. Frames and tiles are the ones actually written by this run, tiles finished by an earlier run are left out.
+ */
+@Getter
+public class VideoStats {
+
+    private final File video;
+    private final boolean skipped;
+    private final long frames;
+    private final long tiles;
+    private final long elapsedNanos;
+    /**
+     * Size of everything written for the tiles, as far as the engine measures it.
+     */
+    private final long bytesWritten;
+    /**
+     * Time spent in every phase outside of the FFmpeg jobs, keyed like {@link FonteoListener#phaseFinished}.
+     */
+    private final Map<String, Long> phaseNanos;
+
+    public VideoStats(File video, boolean skipped, long frames, long tiles, long elapsedNanos) {
+        this(video, skipped, frames, tiles, elapsedNanos, 0, Map.of());
+    }
+
+    public VideoStats(File video, boolean skipped, long frames, long tiles, long elapsedNanos, long bytesWritten, Map<String, Long> phaseNanos) {
+        this.video = video;
+        this.skipped = skipped;
+        this.frames = frames;
+        this.tiles = tiles;
+        this.elapsedNanos = elapsedNanos;
+        this.bytesWritten = bytesWritten;
+        this.phaseNanos = Map.copyOf(phaseNanos);
+    }
+
+    public static VideoStats skipped(File video) {
+        return new VideoStats(video, true, 0, 0, 0);
+    }
+
+    public double getSeconds() {
+        return elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    public double getFramesPerSecond() {
+        return elapsedNanos == 0 ? 0 : frames / getSeconds();
+    }
+
+    public double getTilesPerSecond() {
+        return elapsedNanos == 0 ? 0 : tiles / getSeconds();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package me.domirusz24.fonteo.api;
+
+import java.io.File;
+
+/**
+ * Images written by FFmpeg jobs, counted and measured on disk.
+ */
+record WrittenTiles(long images, long bytes) {
+
+    static final WrittenTiles NONE = new WrittenTiles(0, 0);
+
+    /**
+     * @param finalNames whether the segment's images already have their final names, instead of their names inside the tile's sequence
+     */
+    static WrittenTiles of(TileNaming naming, int x, int y, VideoSegment segment, boolean finalNames) {
+        long images = 0;
+        long bytes = 0;
+        for (int frame = segment.getFirstFrame(); segment.getFrames() < 0 || frame < segment.getFirstFrame() + segment.getFrames(); frame++) {
+            File file = finalNames ? naming.getFile(frame, x, y) : new File(naming.getFolder(), naming.getTileName(frame, x, y));
+            if (!file.isFile()) {
+                break;
+            }
+            images++;
+            bytes += file.length();
+        }
+        return new WrittenTiles(images, bytes);
+    }
+
+    /**
+     * @return every tile written for a whole video under its final name
+     */
+    static WrittenTiles of(TileNaming naming) {
+        WrittenTiles written = NONE;
+        for (int y = 0; y < naming.getRows(); y++) {
+            for (int x = 0; x < naming.getColumns(); x++) {
+                written = written.plus(of(naming, x, y, VideoSegment.whole(), true));
+            }
+        }
+        return written;
+    }
+
+    WrittenTiles plus(WrittenTiles other) {
+        return new WrittenTiles(images + other.images, bytes + other.bytes);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ArchiveWriterTest {
+
+    private static final int BLOCK = 512;
+
+    @TempDir
+    File folder;
+
+    @Test
+    void tarEntriesHaveValidUstarHeaders() throws IOException {
+        File file = ArchiveWriter.getArchiveFile(new File(folder, "tiles"), FonteoAPI.OutputType.TAR);
+        byte[] data = "tile".getBytes(StandardCharsets.US_ASCII);
+        String longName = "a".repeat(120) + "/" + "b".repeat(90) + ".png";
+
+        try (ArchiveWriter archive = ArchiveWriter.open(file, FonteoAPI.OutputType.TAR, 0)) {
+            archive.add("0-0-1.png", data);
+            archive.add(longName, new byte[BLOCK]);
+        }
+
+        byte[] tar = Files.readAllBytes(file.toPath());
+        // Two headers, one padded and one full block of data and the two empty blocks ending the archive.
+        assertEquals(BLOCK * 6, tar.length);
+
+        byte[] header = Arrays.copyOfRange(tar, 0, BLOCK);
+        assertEquals("0-0-1.png", getString(header, 0, 100));
+        assertEquals(data.length, getOctal(header, 124, 12));
+        assertEquals(0644, getOctal(header, 100, 8));
+        assertEquals('0', header[156]);
+        assertEquals("ustar", getString(header, 257, 6));
+        assertEquals("00", getString(header, 263, 2));
+        assertEquals(getChecksum(header), getOctal(header, 148, 7));
+        assertArrayEquals(data, Arrays.copyOfRange(tar, BLOCK, BLOCK + data.length));
+
+        header = Arrays.copyOfRange(tar, BLOCK * 2, BLOCK * 3);
+        assertEquals("b".repeat(90) + ".png", getString(header, 0, 100));
+        assertEquals("a".repeat(120), getString(header, 345, 155));
+        assertEquals(BLOCK, getOctal(header, 124, 12));
+        assertEquals(getChecksum(header), getOctal(header, 148, 7));
+
+        for (int i = BLOCK * 4; i < tar.length; i++) {
+            assertEquals(0, tar[i]);
+        }
+        assertFalse(new File(folder, file.getName() + ".part").exists());
+    }
+
+    /**
+     * @return the checksum of the header, with its own field counted as spaces
+     */
+    private static long getChecksum(byte[] header) {
+        long checksum = 0;
+        for (int i = 0; i < header.length; i++) {
+            checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        }
+        return checksum;
+    }
+
+    private static long getOctal(byte[] header, int offset, int length) {
+        return Long.parseLong(getString(header, offset, length).trim(), 8);
+    }
+
+    private static String getString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProxyCacheTest {
+
+    @TempDir
+    File folder;
+
+    @Test
+    void proxiesAreGeneratedOnceAndReused() throws IOException {
+        ProxyCache cache = new ProxyCache(new File(folder, "proxy"), 1024);
+        InputFingerprint input = createInput("a");
+        AtomicInteger generated = new AtomicInteger();
+
+        assertNull(cache.open(input, 64, 64, 10, FonteoAPI.Sampling.EXACT, null));
+        try (ProxyCache.Lease lease = cache.open(input, 64, 64, 10, FonteoAPI.Sampling.EXACT, file -> write(file, 100, generated))) {
+            assertTrue(lease.getFile().isFile());
+        }
+        try (ProxyCache.Lease lease = cache.open(input, 64, 64, 10, FonteoAPI.Sampling.EXACT, file -> write(file, 100, generated))) {
+            assertTrue(lease.getFile().isFile());
+        }
+        assertEquals(1, generated.get());
+        assertEquals(100, cache.getBytes());
+    }
+
+    @Test
+    void leasedProxiesOutliveEviction() throws IOException {
+        ProxyCache cache = new ProxyCache(new File(folder, "proxy"), 150);
+        AtomicInteger generated = new AtomicInteger();
+
+        try (ProxyCache.Lease first = cache.open(createInput("a"), 64, 64, 10, FonteoAPI.Sampling.EXACT, file -> write(file, 100, generated))) {
+            ProxyCache.Lease second = cache.open(createInput("b"), 64, 64, 10, FonteoAPI.Sampling.EXACT, file -> write(file, 100, generated));
+            assertTrue(first.getFile().isFile());
+            assertTrue(second.getFile().isFile());
+
+            // Releasing the newer proxy evicts it, as the older one is still read.
+            second.close();
+            assertFalse(second.getFile().isFile());
+            assertTrue(first.getFile().isFile());
+        }
+        assertEquals(100, cache.getBytes());
+    }
+
+    private InputFingerprint createInput(String content) throws IOException {
+        File video = new File(folder, content + ".mp4");
+        Files.writeString(video.toPath(), content);
+        return InputFingerprint.of(video);
+    }
+
+    private static void write(File file, int length, AtomicInteger generated) throws IOException {
+        Files.write(file.toPath(), new byte[length]);
+        generated.incrementAndGet();
+    }
+}
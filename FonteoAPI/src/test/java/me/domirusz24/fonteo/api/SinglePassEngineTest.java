@@ -0,0 +1,100 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.probe.FFmpegFormat;
+import net.bramp.ffmpeg.probe.FFmpegProbeResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SinglePassEngineTest {
+
+    private static final File VIDEO = new File("video.mp4");
+    private static final File FOLDER = new File("tiles");
+
+    @Test
+    void singlePassNumbersTileSequencesFromTheSegment() {
+        TileNaming naming = new TileNaming(FOLDER, "%x-%y-%d", "png", VIDEO, 2, 2, null);
+        List<String> args = build(naming, new VideoSegment(1, 21, 21, 2.0));
+
+        assertEquals(List.of("21", "21", "21", "21"), getValues(args, "-start_number"));
+        assertEquals(List.of("21", "21", "21", "21"), getValues(args, "-frames:v"));
+        assertEquals(List.of("2.000000"), getValues(args, "-ss"));
+        assertEquals(List.of("2.200000"), getValues(args, "-t"));
+    }
+
+    @Test
+    void untileTrimsRangesFromTheSegmentBase() {
+        // Frames 3 and 4 of a 2x2 grid hold the flattened indices 9 to 16.
+        TileNaming naming = new TileNaming(FOLDER, "%x-%y-%d", "png", VIDEO, 2, 2, FonteoAPI.FlattenVideoType.CHAR_CODE);
+        List<String> args = build(naming, new VideoSegment(1, 3, 2, 0.2));
+
+        String filter = getValues(args, "-filter_complex").get(0);
+        assertTrue(filter.contains("untile=2x2,split=2[u0][u1]"), filter);
+        assertTrue(filter.contains("[u0]trim=start_frame=0:end_frame=1,setpts=PTS-STARTPTS[t0]"), filter);
+        assertTrue(filter.contains("[u1]trim=start_frame=1:end_frame=8,setpts=PTS-STARTPTS[t1]"), filter);
+        assertEquals(List.of("9", "10"), getValues(args, "-start_number"));
+        assertTrue(args.contains(new File(FOLDER, "#uccc%d.png").getAbsolutePath()));
+        assertTrue(args.contains(new File(FOLDER, "#ucc%d.png").getAbsolutePath()));
+    }
+
+    @Test
+    void untileOfTheLastSegmentRunsUntilTheEnd() {
+        TileNaming naming = new TileNaming(FOLDER, "%x-%y-%d", "png", VIDEO, 2, 2, FonteoAPI.FlattenVideoType.CHAR_CODE);
+        List<String> args = build(naming, new VideoSegment(1, 250, -1, 24.9));
+
+        // Index 997 is the first tile of frame 250, the ranges ending before it are left out.
+        String filter = getValues(args, "-filter_complex").get(0);
+        assertTrue(filter.contains("split=3[u0][u1][u2]"), filter);
+        assertTrue(filter.contains("[u0]trim=start_frame=0:end_frame=3,setpts=PTS-STARTPTS[t0]"), filter);
+        assertTrue(filter.contains("[u1]trim=start_frame=3:end_frame=9003,setpts=PTS-STARTPTS[t1]"), filter);
+        assertTrue(filter.contains("[u2]trim=start_frame=9003,setpts=PTS-STARTPTS[t2]"), filter);
+        assertEquals(List.of("997", "1000", "10000"), getValues(args, "-start_number"));
+    }
+
+    private static List<String> build(TileNaming naming, VideoSegment segment) {
+        FFmpegProbeResult in = new FFmpegProbeResult();
+        in.format = new FFmpegFormat();
+        in.format.filename = VIDEO.getPath();
+        in.format.duration = 3000;
+
+        FFmpegBuilder builder = SinglePassEngine.createBuilder(in, naming, 10, 64, 64, EncodingProfile.DEFAULT, null, "1", TileSelection.ALL, segment);
+        return builder.build();
+    }
+
+    /**
+     * @return the value following every occurrence of the option
+     */
+    private static List<String> getValues(List<String> args, String option) {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i + 1 < args.size(); i++) {
+            if (args.get(i).equals(option)) {
+                values.add(args.get(i + 1));
+            }
+        }
+        return values;
+    }
+}
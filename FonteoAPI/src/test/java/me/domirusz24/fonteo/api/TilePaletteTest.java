@@ -0,0 +1,67 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TilePaletteTest {
+
+    private static final int[] PALETTE = {0xFF101010, 0xFF121212, 0xFF141414, 0x00000000};
+
+    @TempDir
+    File folder;
+
+    @Test
+    void pixelsMapToTheirNearestEntry() throws IOException {
+        File file = new File(folder, "palette.png");
+        BufferedImage image = new BufferedImage(PALETTE.length, 1, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, PALETTE.length, 1, PALETTE, 0, PALETTE.length);
+        ImageIO.write(image, "png", file);
+
+        TilePalette palette = TilePalette.load(file);
+        assertEquals(PALETTE.length, palette.size());
+
+        // Entries a few levels apart stay apart, and colors between them go to the closest one.
+        int[] pixels = {0xFF101010, 0xFF121212, 0xFF141414, 0xFF131414, 0xFF111010, 0x10000000, 0xFF121212, 0xFF131414};
+        byte[] expected = {0, 1, 2, 2, 0, 3, 1, 2};
+
+        ByteBuffer buffer = ByteBuffer.allocate(RawFrame.getFrameSize(pixels.length, 1)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int pixel : pixels) {
+            buffer.putInt(pixel);
+        }
+        RawFrame frame = new RawFrame(1, pixels.length, 1, buffer.flip());
+
+        BufferedImage indexed = palette.toImage(frame.tile(0, 0, pixels.length, 1));
+        byte[] indices = ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(expected[i], indices[i], "pixel " + i);
+        }
+    }
+}
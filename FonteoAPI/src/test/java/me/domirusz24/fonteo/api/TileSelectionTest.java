@@ -0,0 +1,78 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static me.domirusz24.fonteo.api.VideoSegmentTest.assertSegment;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileSelectionTest {
+
+    private static final List<VideoSegment> SEGMENTS = List.of(
+            new VideoSegment(0, 1, 20, 0.0),
+            new VideoSegment(1, 21, 21, 2.0),
+            new VideoSegment(2, 42, -1, 4.1, true)
+    );
+
+    @Test
+    void restrictKeepsSegmentsOfAFullSelection() {
+        assertSame(SEGMENTS, TileSelection.ALL.restrict(SEGMENTS, 10));
+    }
+
+    @Test
+    void restrictCutsSegmentsToTheFrameRange() {
+        List<VideoSegment> restricted = TileSelection.builder().firstFrame(25).lastFrame(50).build().restrict(SEGMENTS, 10);
+
+        assertEquals(2, restricted.size());
+        assertSegment(restricted.get(0), 1, 25, 17, 2.4);
+        assertSegment(restricted.get(1), 2, 42, 9, 4.1);
+        assertTrue(restricted.get(1).isKeyframesOnly());
+    }
+
+    @Test
+    void restrictStartsAtTheTimeWindow() {
+        List<VideoSegment> restricted = TileSelection.builder().startSeconds(4.5).build().restrict(SEGMENTS, 10);
+
+        assertEquals(1, restricted.size());
+        assertSegment(restricted.get(0), 2, 46, -1, 4.5);
+    }
+
+    @Test
+    void timeWindowSelectsEveryFrameShownInIt() {
+        TileSelection selection = TileSelection.builder().startSeconds(1.05).endSeconds(2.0).build();
+
+        assertEquals(11, selection.getFirstFrame(10));
+        assertEquals(20, selection.getLastFrame(10));
+    }
+
+    @Test
+    void validateRejectsTilesOutsideTheGrid() {
+        TileSelection selection = TileSelection.builder().tiles(TileSelection.parseTiles("0:0, 2:1")).build();
+
+        selection.validate(3, 2);
+        assertEquals(2, selection.getTileCount(3, 2));
+        assertThrows(IllegalArgumentException.class, () -> selection.validate(2, 2));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TileStoreTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+    private static final int COLUMNS = 2;
+    private static final int ROWS = 2;
+
+    @TempDir
+    File folder;
+
+    @Test
+    void rawTilesRoundTrip() throws IOException {
+        roundTrip(TileStore.Codec.RAW);
+    }
+
+    @Test
+    void deflatedTilesRoundTrip() throws IOException {
+        roundTrip(TileStore.Codec.DEFLATE);
+    }
+
+    private void roundTrip(TileStore.Codec codec) throws IOException {
+        File file = TileStoreWriter.getStoreFile(new File(folder, "tiles"));
+        RawFrame first = createFrame(1);
+        RawFrame second = createFrame(2);
+        int tileWidth = WIDTH / COLUMNS;
+        int tileHeight = HEIGHT / ROWS;
+
+        try (TileStoreWriter writer = new TileStoreWriter(file, codec, "png", 0, tileWidth, tileHeight, COLUMNS, ROWS)) {
+            for (int y = 0; y < ROWS; y++) {
+                for (int x = 0; x < COLUMNS; x++) {
+                    writer.add(first.tile(x, y, tileWidth, tileHeight), TileNaming.getFlattenedIndex(1, x, y, COLUMNS, ROWS));
+                }
+            }
+            // The second frame only has its last tile written and repeats the first tile of the first frame.
+            writer.add(second.tile(1, 1, tileWidth, tileHeight), TileNaming.getFlattenedIndex(2, 1, 1, COLUMNS, ROWS));
+            writer.alias(TileNaming.getFlattenedIndex(2, 0, 0, COLUMNS, ROWS), 1);
+        }
+
+        try (TileStore store = TileStore.open(file)) {
+            assertEquals(tileWidth, store.getTileWidth());
+            assertEquals(tileHeight, store.getTileHeight());
+            assertEquals(COLUMNS, store.getColumns());
+            assertEquals(ROWS, store.getRows());
+            assertEquals(codec, store.getCodec());
+            assertEquals("png", store.getExtension());
+            assertEquals(8, store.getEntries());
+
+            for (int y = 0; y < ROWS; y++) {
+                for (int x = 0; x < COLUMNS; x++) {
+                    assertTile(first.tile(x, y, tileWidth, tileHeight), store.getImage(store.getFlattenedIndex(1, x, y)));
+                }
+            }
+            assertTile(second.tile(1, 1, tileWidth, tileHeight), store.getImage(store.getFlattenedIndex(2, 1, 1)));
+            assertTile(first.tile(0, 0, tileWidth, tileHeight), store.getImage(store.getFlattenedIndex(2, 0, 0)));
+            assertFalse(store.contains(store.getFlattenedIndex(2, 1, 0)));
+            assertThrows(IndexOutOfBoundsException.class, () -> store.getTile(2, 1, 0));
+
+            if (codec == TileStore.Codec.RAW) {
+                assertEquals(RawFrame.getFrameSize(tileWidth, tileHeight), store.getTile(1, 1, 0).remaining());
+            }
+
+            store.close();
+            assertThrows(IllegalStateException.class, () -> store.getTile(1));
+        }
+    }
+
+    private static RawFrame createFrame(int frame) {
+        ByteBuffer buffer = ByteBuffer.allocate(RawFrame.getFrameSize(WIDTH, HEIGHT)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            buffer.putInt(0xFF000000 | frame << 16 | i << 8 | i * 7);
+        }
+        return new RawFrame(frame, WIDTH, HEIGHT, buffer.flip());
+    }
+
+    private static void assertTile(FrameTile tile, BufferedImage image) {
+        assertEquals(tile.getWidth(), image.getWidth());
+        assertEquals(tile.getHeight(), image.getHeight());
+        for (int y = 0; y < tile.getHeight(); y++) {
+            for (int x = 0; x < tile.getWidth(); x++) {
+                assertEquals(tile.getPixel(x, y), image.getRGB(x, y), "pixel " + x + ":" + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VideoSegmentTest {
+
+    private static final List<Double> KEYFRAMES = List.of(0.0, 2.0, 4.1, 6.0, 8.0);
+
+    @Test
+    void splitStartsSegmentsAtKeyframes() {
+        List<VideoSegment> segments = VideoSegment.split(KEYFRAMES, 0, 10, 10, 4);
+
+        assertEquals(4, segments.size());
+        assertSegment(segments.get(0), 0, 1, 20, 0.0);
+        assertSegment(segments.get(1), 1, 21, 21, 2.0);
+        // The first output frame at or after the keyframe at 4.1s is shown at 4.1s.
+        assertSegment(segments.get(2), 2, 42, 39, 4.1);
+        assertSegment(segments.get(3), 3, 81, -1, 8.0);
+    }
+
+    @Test
+    void splitNumbersFramesContinuously() {
+        List<VideoSegment> segments = VideoSegment.split(KEYFRAMES, 0, 10, 10, 4);
+
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            VideoSegment segment = segments.get(i);
+            assertEquals(segments.get(i + 1).getFirstFrame(), segment.getFirstFrame() + segment.getFrames());
+
+            List<String> args = segment.getOutputArgs();
+            assertEquals(List.of("-start_number", String.valueOf(segment.getFirstFrame()), "-frames:v", String.valueOf(segment.getFrames())), args);
+        }
+        assertEquals(List.of("-start_number", "81"), segments.get(segments.size() - 1).getOutputArgs());
+    }
+
+    @Test
+    void splitDropsSegmentsSharingAKeyframe() {
+        List<VideoSegment> segments = VideoSegment.split(List.of(0.0, 9.0), 0, 10, 10, 8);
+
+        assertEquals(2, segments.size());
+        assertSegment(segments.get(0), 0, 1, 90, 0.0);
+        assertSegment(segments.get(1), 1, 91, -1, 9.0);
+    }
+
+    @Test
+    void splitCountsKeyframesFromTheStartTime() {
+        List<Double> keyframes = KEYFRAMES.stream().map(time -> time + 1.4).toList();
+        List<VideoSegment> segments = VideoSegment.split(keyframes, 1.4, 10, 10, 4);
+
+        assertEquals(4, segments.size());
+        assertSegment(segments.get(1), 1, 21, 21, 2.0);
+        assertSegment(segments.get(3), 3, 81, -1, 8.0);
+    }
+
+    @Test
+    void inputArgsSeekAndReadOneFramePastTheEnd() {
+        assertEquals(List.of("-t", "2.100000"), new VideoSegment(0, 1, 20, 0).getInputArgs(10));
+        assertEquals(List.of("-ss", "2.000000", "-t", "2.200000"), new VideoSegment(1, 21, 21, 2.0).getInputArgs(10));
+        assertEquals(List.of("-ss", "8.000000"), new VideoSegment(3, 81, -1, 8.0).getInputArgs(10));
+        assertEquals(List.of(), VideoSegment.whole().getInputArgs(10));
+        assertEquals(List.of("-start_number", "1"), VideoSegment.whole().getOutputArgs());
+    }
+
+    @Test
+    void keyframesOnlySkipsOtherFrames() {
+        VideoSegment segment = new VideoSegment(1, 21, 21, 2.0).withKeyframesOnly();
+
+        assertTrue(segment.isKeyframesOnly());
+        assertEquals(List.of("-skip_frame", "nokey", "-ss", "2.000000", "-t", "2.200000"), segment.getInputArgs(10));
+    }
+
+    @Test
+    void samplesCoverEveryOutputFrame() {
+        List<VideoSegment> samples = VideoSegment.samples(1.0, 4);
+
+        assertEquals(4, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertSegment(samples.get(i), i, i + 1, 1, i / 4.0);
+        }
+        assertEquals(1, VideoSegment.samples(0.1, 4).size());
+    }
+
+    @Test
+    void chooseSamplingKeepsExactWithoutKeyframesOrDroppedFrames() {
+        assertEquals(FonteoAPI.Sampling.EXACT, VideoSegment.chooseSampling(List.of(), 0, 10, 60, 10, -1));
+        assertEquals(FonteoAPI.Sampling.EXACT, VideoSegment.chooseSampling(everyTenth(0), 0, 1, 15, 10, -1));
+    }
+
+    @Test
+    void chooseSamplingUsesKeyframesWithinTolerance() {
+        assertEquals(FonteoAPI.Sampling.KEYFRAMES, VideoSegment.chooseSampling(everyTenth(0), 0, 1, 0, 10, -1));
+        assertEquals(FonteoAPI.Sampling.KEYFRAMES, VideoSegment.chooseSampling(everyTenth(0.06), 0, 1, 60, 10, 0.1));
+    }
+
+    @Test
+    void chooseSamplingSeeksWithAKeyframePerOutputFrame() {
+        // The first output frame is 0.06s off its keyframe, more than the default half a frame.
+        assertEquals(FonteoAPI.Sampling.SEEK, VideoSegment.chooseSampling(everyTenth(0.06), 0, 1, 60, 10, -1));
+    }
+
+    @Test
+    void chooseSamplingDecodesEverythingWithSparseKeyframes() {
+        assertEquals(FonteoAPI.Sampling.EXACT, VideoSegment.chooseSampling(List.of(0.0, 2.0), 0, 4, 60, 10, -1));
+    }
+
+    @Test
+    void chooseSamplingCountsKeyframesFromTheStartTime() {
+        assertEquals(FonteoAPI.Sampling.KEYFRAMES, VideoSegment.chooseSampling(everyTenth(1.4), 1.4, 1, 0, 10, -1));
+        assertEquals(FonteoAPI.Sampling.SEEK, VideoSegment.chooseSampling(everyTenth(1.46), 1.4, 1, 60, 10, -1));
+    }
+
+    /**
+     * @return ten keyframes a tenth of a second apart, starting at the offset
+     */
+    private static List<Double> everyTenth(double offset) {
+        List<Double> keyframes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            keyframes.add(offset + i / 10.0);
+        }
+        return keyframes;
+    }
+
+    static void assertSegment(VideoSegment segment, int index, int firstFrame, int frames, double startSeconds) {
+        assertEquals(index, segment.getIndex());
+        assertEquals(firstFrame, segment.getFirstFrame());
+        assertEquals(frames, segment.getFrames());
+        assertEquals(startSeconds, segment.getStartSeconds(), 1e-9);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.benchmarks;
+
+import me.domirusz24.fonteo.api.ExecutableSupplier;
+import me.domirusz24.fonteo.api.Fonteo;
+import me.domirusz24.fonteo.api.FonteoAPI;
+import me.domirusz24.fonteo.api.FonteoListener;
+import me.domirusz24.fonteo.api.ProcessOptions;
+import me.domirusz24.fonteo.api.VideoStats;
+import net.bramp.ffmpeg.FFmpeg;
+import net.bramp.ffmpeg.FFmpegExecutor;
+import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end throughput of {@link Fonteo#processVideo} on a synthetic video generated with ffmpeg's
+ * {@code testsrc}, for every combination of grid size and engine. Configured with system properties:
+ * <ul>
+ *     <li>{@code fonteo.duration} - seconds of test video, default 10</li>
+ *     <li>{@code fonteo.size} - test video size, default 1280x720</li>
+ *     <li>{@code fonteo.fps} - target fps, default 20</li>
+ *     <li>{@code fonteo.grids} - grid sizes, default 2x2,4x4,8x8</li>
+ *     <li>{@code fonteo.engines} - engines, default every {@link FonteoAPI.Engine}</li>
+ *     <li>{@code fonteo.runs} - runs per combination, the best one is reported, default 3</li>
+ *     <li>{@code fonteo.ffmpeg} / {@code fonteo.ffprobe} - executables, default the ones found on the path</li>
+ * </ul>
+ */
+public class EndToEndSuite {
+
+    public static void main(String[] args) throws IOException {
+        int duration = Integer.getInteger("fonteo.duration", 10);
+        String size = System.getProperty("fonteo.size", "1280x720");
+        int fps = Integer.getInteger("fonteo.fps", 20);
+        String[] grids = System.getProperty("fonteo.grids", "2x2,4x4,8x8").split(",");
+        String engines = System.getProperty("fonteo.engines");
+        int runs = Integer.getInteger("fonteo.runs", 3);
+
+        FFmpeg ffmpeg = System.getProperty("fonteo.ffmpeg") != null ? ExecutableSupplier.getFFmpeg(System.getProperty("fonteo.ffmpeg")) : ExecutableSupplier.getFFmpeg();
+        FFprobe ffprobe = System.getProperty("fonteo.ffprobe") != null ? ExecutableSupplier.getFFprobe(System.getProperty("fonteo.ffprobe")) : ExecutableSupplier.getFFprobe();
+        if (ffmpeg == null || ffprobe == null) {
+            System.out.println("Couldn't find ffmpeg or ffprobe!");
+            return;
+        }
+
+        // Without a probe cache, to keep the temporary test videos out of the user's one.
+        Fonteo fonteo = Fonteo.builder()
+                .ffmpeg(ffmpeg)
+                .ffprobe(ffprobe)
+                .build();
+
+        List<FonteoAPI.Engine> engineList = new ArrayList<>();
+        if (engines == null) {
+            engineList.addAll(List.of(FonteoAPI.Engine.values()));
+        } else {
+            for (String engine : engines.split(",")) {
+                engineList.add(FonteoAPI.Engine.valueOf(engine.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+
+        Path workspace = Files.createTempDirectory("fonteo-benchmark");
+        try {
+            File video = workspace.resolve("testsrc.mp4").toFile();
+            System.out.println("Generating " + duration + "s " + size + " test video...");
+            generateVideo(ffmpeg, video, size, duration);
+
+            String[] dimensions = size.split("x");
+            int width = Integer.parseInt(dimensions[0]);
+            int height = Integer.parseInt(dimensions[1]);
+
+            List<String> results = new ArrayList<>();
+            results.add(String.format(Locale.ROOT, "%-12s %-6s %10s %12s %12s", "engine", "grid", "seconds", "frames/s", "tiles/s"));
+
+            for (String grid : grids) {
+                String[] split = grid.trim().split("x");
+                int columns = Integer.parseInt(split[0]);
+                int rows = Integer.parseInt(split[1]);
+
+                for (FonteoAPI.Engine engine : engineList) {
+                    ProcessOptions options = ProcessOptions.builder().engine(engine).listener(FonteoListener.NONE).build();
+
+                    VideoStats best = null;
+                    for (int run = 0; run < runs; run++) {
+                        File output = workspace.resolve(engine + "-" + grid.trim() + "-" + run).toFile();
+                        VideoStats stats = fonteo.processVideo(video, output, "%x-%y-%d", "png", fps,
+                                width - width % columns, height - height % rows, columns, rows, null, options);
+                        delete(output.toPath());
+
+                        if (best == null || stats.getElapsedNanos() < best.getElapsedNanos()) {
+                            best = stats;
+                        }
+                    }
+
+                    results.add(String.format(Locale.ROOT, "%-12s %-6s %10.2f %12.1f %12.1f", engine, grid.trim(),
+                            best.getSeconds(), best.getFramesPerSecond(), best.getTilesPerSecond()));
+                }
+            }
+
+            System.out.println();
+            results.forEach(System.out::println);
+        } finally {
+            delete(workspace);
+        }
+    }
+
+    private static void generateVideo(FFmpeg ffmpeg, File video, String size, int duration) throws IOException {
+        FFmpegBuilder builder = new FFmpegBuilder()
+                .overrideOutputFiles(true)
+                .setFormat("lavfi")
+                .setInput("testsrc=size=" + size + ":rate=30")
+                .addOutput(video.getAbsolutePath())
+                .setDuration(duration, TimeUnit.SECONDS)
+                .setVideoPixelFormat("yuv420p")
+                .done();
+
+        new FFmpegExecutor(ffmpeg).createJob(builder).run();
+    }
+
+    private static void delete(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.benchmarks;
+
+import me.domirusz24.fonteo.api.FrameTile;
+import me.domirusz24.fonteo.api.RawFrame;
+import me.domirusz24.fonteo.api.TileDeduplicator;
+import me.domirusz24.fonteo.api.TileEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per tile work of the in-JVM engine: cropping a tile out of a raw bgra frame, hashing it for deduplication
+ * and encoding it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameTileBenchmark {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    @Param({"4", "8"})
+    public int grid;
+
+    @Param({"png", "jpg"})
+    public String extension;
+
+    private FrameTile tile;
+    private int[] pixels;
+    private TileEncoder encoder;
+
+    @Setup
+    public void setup() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RawFrame.getFrameSize(WIDTH, HEIGHT)).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Smooth gradients with some noise, closer to video content than random bytes are.
+        Random random = new Random(0);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int noise = random.nextInt(8);
+                buffer.putInt(0xFF000000 | ((x * 255 / WIDTH + noise) & 0xFF) << 16 | ((y * 255 / HEIGHT + noise) & 0xFF) << 8 | ((x + y) & 0xFF));
+            }
+        }
+        buffer.flip();
+
+        int tileWidth = WIDTH / grid;
+        int tileHeight = HEIGHT / grid;
+
+        tile = new RawFrame(1, WIDTH, HEIGHT, buffer).tile(grid / 2, grid / 2, tileWidth, tileHeight);
+        pixels = new int[tileWidth * tileHeight];
+        encoder = new TileEncoder(extension);
+    }
+
+    @Benchmark
+    public int[] copyPixels() {
+        tile.copyPixels(pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public BufferedImage toImage() {
+        return tile.toImage(encoder.getImageType());
+    }
+
+    @Benchmark
+    public Object hash() {
+        return TileDeduplicator.hash(tile);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return encoder.encode(tile);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.benchmarks;
+
+import me.domirusz24.fonteo.api.ExecutableSupplier;
+import me.domirusz24.fonteo.api.Fonteo;
+import me.domirusz24.fonteo.api.FonteoAPI;
+import me.domirusz24.fonteo.api.FonteoListener;
+import me.domirusz24.fonteo.api.ProcessOptions;
+import me.domirusz24.fonteo.api.VideoStats;
+import net.bramp.ffmpeg.FFmpeg;
+import net.bramp.ffmpeg.FFmpegExecutor;
+import net.bramp.ffmpeg.FFprobe;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Speed and accuracy of every {@link FonteoAPI.Sampling} at a low target fps from a high fps {@code testsrc} video,
+ * compared with {@link FonteoAPI.Sampling#EXACT}, the path every frame used to take. Accuracy is the mean absolute
+ * difference of every color channel from the tiles of the exact run, from 0 to 255. Configured with system properties:
+ * <ul>
+ *     <li>{@code fonteo.duration} - seconds of test video, default 60</li>
+ *     <li>{@code fonteo.size} - test video size, default 1280x720</li>
+ *     <li>{@code fonteo.rate} - frame rate of the test video, default 60</li>
+ *     <li>{@code fonteo.gop} - frames between two keyframes of the test video, default 60</li>
+ *     <li>{@code fonteo.fps} - target fps, default 1</li>
+ *     <li>{@code fonteo.grid} - grid size, default 2x2</li>
+ *     <li>{@code fonteo.engine} - engine, default {@link FonteoAPI.Engine#SINGLE_PASS}</li>
+ *     <li>{@code fonteo.runs} - runs per sampling, the best one is reported, default 3</li>
+ *     <li>{@code fonteo.ffmpeg} / {@code fonteo.ffprobe} - executables, default the ones found on the path</li>
+ * </ul>
+ */
+public class SamplingSuite {
+
+    public static void main(String[] args) throws IOException {
+        int duration = Integer.getInteger("fonteo.duration", 60);
+        String size = System.getProperty("fonteo.size", "1280x720");
+        int rate = Integer.getInteger("fonteo.rate", 60);
+        int gop = Integer.getInteger("fonteo.gop", 60);
+        int fps = Integer.getInteger("fonteo.fps", 1);
+        String[] grid = System.getProperty("fonteo.grid", "2x2").split("x");
+        FonteoAPI.Engine engine = FonteoAPI.Engine.valueOf(System.getProperty("fonteo.engine", "single_pass").toUpperCase(Locale.ROOT));
+        int runs = Integer.getInteger("fonteo.runs", 3);
+
+        FFmpeg ffmpeg = System.getProperty("fonteo.ffmpeg") != null ? ExecutableSupplier.getFFmpeg(System.getProperty("fonteo.ffmpeg")) : ExecutableSupplier.getFFmpeg();
+        FFprobe ffprobe = System.getProperty("fonteo.ffprobe") != null ? ExecutableSupplier.getFFprobe(System.getProperty("fonteo.ffprobe")) : ExecutableSupplier.getFFprobe();
+        if (ffmpeg == null || ffprobe == null) {
+            System.out.println("Couldn't find ffmpeg or ffprobe!");
+            return;
+        }
+
+        // Without a probe cache, to keep the temporary test videos out of the user's one.
+        Fonteo fonteo = Fonteo.builder()
+                .ffmpeg(ffmpeg)
+                .ffprobe(ffprobe)
+                .build();
+
+        Path workspace = Files.createTempDirectory("fonteo-benchmark");
+        try {
+            File video = workspace.resolve("testsrc.mp4").toFile();
+            System.out.println("Generating " + duration + "s " + size + " test video at " + rate + " fps, a keyframe every " + gop + " frames...");
+            generateVideo(ffmpeg, video, size, rate, gop, duration);
+
+            String[] dimensions = size.split("x");
+            int columns = Integer.parseInt(grid[0]);
+            int rows = Integer.parseInt(grid[1]);
+            int width = Integer.parseInt(dimensions[0]);
+            int height = Integer.parseInt(dimensions[1]);
+
+            List<String> results = new ArrayList<>();
+            results.add(String.format(Locale.ROOT, "%-10s %10s %10s %12s", "sampling", "seconds", "speedup", "difference"));
+
+            File reference = null;
+            double exactSeconds = 0;
+
+            for (FonteoAPI.Sampling sampling : FonteoAPI.Sampling.values()) {
+                ProcessOptions options = ProcessOptions.builder().engine(engine).sampling(sampling).listener(FonteoListener.NONE).build();
+
+                VideoStats best = null;
+                File kept = null;
+                for (int run = 0; run < runs; run++) {
+                    File output = workspace.resolve(sampling + "-" + run).toFile();
+                    VideoStats stats = fonteo.processVideo(video, output, "%x-%y-%d", "png", fps,
+                            width - width % columns, height - height % rows, columns, rows, null, options);
+
+                    if (best == null || stats.getElapsedNanos() < best.getElapsedNanos()) {
+                        best = stats;
+                    }
+                    if (kept == null) {
+                        kept = output;
+                    } else {
+                        delete(output.toPath());
+                    }
+                }
+
+                if (sampling == FonteoAPI.Sampling.EXACT) {
+                    reference = kept;
+                    exactSeconds = best.getSeconds();
+                }
+
+                results.add(String.format(Locale.ROOT, "%-10s %10.2f %9.2fx %12.2f", sampling, best.getSeconds(),
+                        exactSeconds / best.getSeconds(), getDifference(reference, kept)));
+
+                if (kept != reference) {
+                    delete(kept.toPath());
+                }
+            }
+
+            System.out.println();
+            results.forEach(System.out::println);
+        } finally {
+            delete(workspace);
+        }
+    }
+
+    /**
+     * @return mean absolute difference of every color channel of the images named alike in both folders, missing ones counting as entirely different
+     */
+    private static double getDifference(File reference, File folder) throws IOException {
+        File[] files = reference.listFiles((dir, name) -> name.endsWith(".png"));
+        if (files == null || files.length == 0) {
+            return 0;
+        }
+
+        double total = 0;
+        for (File file : files) {
+            File other = new File(folder, file.getName());
+            if (!other.isFile()) {
+                total += 255;
+                continue;
+            }
+
+            BufferedImage expected = ImageIO.read(file);
+            BufferedImage actual = ImageIO.read(other);
+            long sum = 0;
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int x = 0; x < expected.getWidth(); x++) {
+                    int a = expected.getRGB(x, y);
+                    int b = actual.getRGB(x, y);
+                    sum += Math.abs((a >> 16 & 0xFF) - (b >> 16 & 0xFF)) + Math.abs((a >> 8 & 0xFF) - (b >> 8 & 0xFF)) + Math.abs((a & 0xFF) - (b & 0xFF));
+                }
+            }
+            total += sum / (3.0 * expected.getWidth() * expected.getHeight());
+        }
+        return total / files.length;
+    }
+
+    private static void generateVideo(FFmpeg ffmpeg, File video, String size, int rate, int gop, int duration) throws IOException {
+        FFmpegBuilder builder = new FFmpegBuilder()
+                .overrideOutputFiles(true)
+                .setFormat("lavfi")
+                .setInput("testsrc=size=" + size + ":rate=" + rate)
+                .addOutput(video.getAbsolutePath())
+                .setDuration(duration, TimeUnit.SECONDS)
+                .setVideoPixelFormat("yuv420p")
+                .addExtraArgs("-g", String.valueOf(gop))
+                .done();
+
+        new FFmpegExecutor(ffmpeg).createJob(builder).run();
+    }
+
+    private static void delete(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
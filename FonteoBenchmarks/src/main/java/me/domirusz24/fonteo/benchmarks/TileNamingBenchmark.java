@@ -0,0 +1,87 @@
+/*
+ * Fonteo
+ * Copyright (C) 2023  DomiRusz24
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.domirusz24.fonteo.benchmarks;
+
+import me.domirusz24.fonteo.api.FonteoAPI;
+import me.domirusz24.fonteo.api.TileNaming;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name computation for flattened output, which replaced parsing and renaming every file after encoding.
+ * One invocation names every tile of a 200 frame video.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileNamingBenchmark {
+
+    private static final int FRAMES = 200;
+
+    @Param({"CHAR_CODE", "SIMPLE"})
+    public FonteoAPI.FlattenVideoType flattenType;
+
+    @Param({"4", "8"})
+    public int grid;
+
+    private TileNaming naming;
+
+    @Setup
+    public void setup() {
+        naming = new TileNaming(new File("frames"), "%x-%y-%d", "png", new File("video.mp4"), grid, grid, flattenType);
+    }
+
+    @Benchmark
+    public void flattenedNames(Blackhole blackhole) {
+        for (int frame = 1; frame <= FRAMES; frame++) {
+            for (int y = 0; y < grid; y++) {
+                for (int x = 0; x < grid; x++) {
+                    blackhole.consume(naming.getName(frame, x, y));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void flattenedFiles(Blackhole blackhole) {
+        for (int frame = 1; frame <= FRAMES; frame++) {
+            for (int y = 0; y < grid; y++) {
+                for (int x = 0; x < grid; x++) {
+                    blackhole.consume(naming.getFile(frame, x, y));
+                }
+            }
+        }
+    }
+}
@@ -19,7 +19,24 @@
 package me.domirusz24.fonteo;
 
 import com.google.common.base.MoreObjects;
+import com.google.gson.JsonObject;
+import me.domirusz24.fonteo.api.BatchProcessor;
+import me.domirusz24.fonteo.api.ConsoleListener;
+import me.domirusz24.fonteo.api.DaemonClient;
+import me.domirusz24.fonteo.api.EncodingProfile;
+import me.domirusz24.fonteo.api.EventLogListener;
+import me.domirusz24.fonteo.api.FolderWatcher;
 import me.domirusz24.fonteo.api.FonteoAPI;
+import me.domirusz24.fonteo.api.FonteoDaemon;
+import me.domirusz24.fonteo.api.FonteoListener;
+import me.domirusz24.fonteo.api.GridSpec;
+import me.domirusz24.fonteo.api.JobRequest;
+import me.domirusz24.fonteo.api.ProbeCache;
+import me.domirusz24.fonteo.api.ProcessOptions;
+import me.domirusz24.fonteo.api.ProxyCache;
+import me.domirusz24.fonteo.api.TileScheduler;
+import me.domirusz24.fonteo.api.TileSelection;
+import me.domirusz24.fonteo.api.TileStore;
 import me.domirusz24.fonteo.api.UnsupportedOsException;
 import net.bramp.ffmpeg.FFmpeg;
 import org.apache.commons.cli.*;
@@ -27,9 +44,13 @@ import org.apache.commons.cli.*;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
 
 public class App {
-    public static void main(String[] args) throws IOException, UnsupportedOsException, URISyntaxException {
+    public static void main(String[] args) throws IOException, UnsupportedOsException, URISyntaxException, InterruptedException {
 
         if (args.length == 0) {
             emptyMain();
@@ -46,7 +67,15 @@ public class App {
                                 .hasArg()
                                 .desc("use given video for splitting.")
                                 .type(PatternOptionBuilder.FILE_VALUE)
-                                .required().build()
+                                .build()
+                )
+                .addOption(
+                        Option.builder("b")
+                                .longOpt("batch")
+                                .argName("inputs")
+                                .hasArgs()
+                                .desc("process every given video, directory, glob or @list file into its own folder inside the output folder.")
+                                .build()
                 )
                 .addOption(
                         Option.builder("o")
@@ -55,7 +84,7 @@ public class App {
                                 .hasArg()
                                 .desc("use given folder name for outputting frames.")
                                 .type(PatternOptionBuilder.FILE_VALUE)
-                                .required().build()
+                                .build()
                 )
                 .addOption(
                         Option.builder("n")
@@ -160,6 +189,271 @@ public class App {
                                 .desc("use the included executables.")
                                 .build()
                 )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("engine")
+                                .desc("processing engine (single_pass, per_tile, in_jvm) (default: single_pass).")
+                                .type(PatternOptionBuilder.STRING_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder("p")
+                                .longOpt("parallelism")
+                                .argName("jobAmount")
+                                .hasArg()
+                                .desc("use given maximum amount of concurrent ffmpeg jobs (default: amount of cores).")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder("t")
+                                .longOpt("threads")
+                                .argName("threadAmount")
+                                .hasArg()
+                                .desc("use given total ffmpeg thread budget shared by concurrent jobs (default: amount of cores).")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("segments")
+                                .argName("amount")
+                                .desc("split the video into given amount of keyframe aligned time segments processed in parallel, 0 for automatic (default: 1).")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("sampling")
+                                .desc("pick frames by (exact, keyframes, seek, auto), anything but exact trades accuracy for speed at a low fps (default: exact).")
+                                .type(PatternOptionBuilder.STRING_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("sampling-tolerance")
+                                .argName("seconds")
+                                .desc("let auto sampling use keyframes only when every frame is at most given seconds off (default: half a frame).")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("output-type")
+                                .desc("write tiles as (files, atlas, zip, tar, font, store) (default: files).")
+                                .type(PatternOptionBuilder.STRING_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .longOpt("grid")
+                                .argName("WxH:CxR")
+                                .hasArgs()
+                                .desc("produce every given size and grid from a single decode of the input, each into its own folder inside the output folder.")
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("encoding")
+                                .argName("profile")
+                                .desc("encode tile images with given profile (default, fast, small, webp-lossless, indexed) (default: default).")
+                                .type(PatternOptionBuilder.STRING_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("atlas-size")
+                                .desc("use given maximum atlas sheet or glyph texture width and height (default: 4096).")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("font-namespace")
+                                .argName("namespace")
+                                .desc("use given resource namespace for font output (default: \"fonteo\").")
+                                .type(PatternOptionBuilder.STRING_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("pack-format")
+                                .desc("use given resource pack format for font output (default: 15).")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("store-codec")
+                                .argName("codec")
+                                .desc("write tile store payloads as (raw, deflate, image) (default: raw).")
+                                .type(PatternOptionBuilder.STRING_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("compression-level")
+                                .argName("level")
+                                .desc("deflate zip entries with given level from 1 to 9, 0 to store them (default: 0).")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("probe-cache")
+                                .argName("folder")
+                                .desc("use given folder for cached ffprobe results (default: ~/.cache/fonteo/probe).")
+                                .type(PatternOptionBuilder.FILE_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg(false)
+                                .longOpt("no-probe-cache")
+                                .desc("always run ffprobe instead of using cached results.")
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .optionalArg(true)
+                                .longOpt("proxy-cache")
+                                .argName("folder")
+                                .desc("keep scaled copies of the inputs in given folder and tile them again from there when only the grid, format or flatten type changes (default: ~/.cache/fonteo/proxy).")
+                                .type(PatternOptionBuilder.STRING_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("proxy-cache-size")
+                                .argName("megabytes")
+                                .desc("evict the least recently used proxies once they take more than given size (default: 10240).")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg(false)
+                                .longOpt("dedup")
+                                .desc("write identical tiles only once and map the rest onto them.")
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("tiles")
+                                .argName("x:y,...")
+                                .desc("only process given tiles, keeping the names of a full run (default: all).")
+                                .type(PatternOptionBuilder.STRING_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("start-frame")
+                                .argName("frame")
+                                .desc("only process frames from given one on, starting at 1.")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("end-frame")
+                                .argName("frame")
+                                .desc("only process frames up to and including given one.")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("start-time")
+                                .argName("seconds")
+                                .desc("only process frames shown from given second on.")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("end-time")
+                                .argName("seconds")
+                                .desc("only process frames shown before given second.")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("event-log")
+                                .argName("file")
+                                .desc("append progress and per-tile metrics to given file as JSON lines.")
+                                .type(PatternOptionBuilder.FILE_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .longOpt("watch")
+                                .argName("folders")
+                                .hasArgs()
+                                .desc("keep running and process every video appearing in or changing inside given folders into its own folder inside the output folder.")
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("debounce")
+                                .argName("millis")
+                                .desc("wait until a watched video has not changed for given time before processing it (default: " + FolderWatcher.DEFAULT_DEBOUNCE_MILLIS + ").")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg(false)
+                                .longOpt("daemon")
+                                .desc("keep running and accept jobs from other fonteocli runs on localhost.")
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("daemon-port")
+                                .argName("port")
+                                .desc("port of the daemon (default: " + FonteoDaemon.DEFAULT_PORT + ").")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg()
+                                .longOpt("max-jobs")
+                                .argName("amount")
+                                .desc("amount of jobs the daemon or watch mode runs at once (default: same as parallelism).")
+                                .type(PatternOptionBuilder.NUMBER_VALUE)
+                                .build()
+                )
+                .addOption(
+                        Option.builder()
+                                .hasArg(false)
+                                .longOpt("no-daemon")
+                                .desc("process in this run even if a daemon is running.")
+                                .build()
+                )
         ;
 
         CommandLineParser parser = new DefaultParser();
@@ -179,6 +473,42 @@ public class App {
             return;
         }
 
+        boolean daemon = cmd.getCmd().hasOption("daemon");
+
+        boolean watch = cmd.getCmd().hasOption("watch");
+
+        if (!daemon && !watch && !cmd.getCmd().hasOption("input") && !cmd.getCmd().hasOption("batch")) {
+            System.out.println("Missing required option: i, b or watch");
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("fonteocli", options);
+            return;
+        }
+
+        if (!daemon && !cmd.getCmd().hasOption("output")) {
+            System.out.println("Missing required option: o");
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("fonteocli", options);
+            return;
+        }
+
+        FonteoAPI.FlattenVideoType flattenType = null;
+        if (!cmd.getCmd().hasOption("format") && cmd.getCmd().hasOption("flatten-type")) {
+            flattenType = FonteoAPI.FlattenVideoType.valueOf(cmd.getOrDefault("flatten-type", "simple").toUpperCase());
+        }
+
+        int daemonPort = cmd.getOrDefaultNumber("daemon-port", FonteoDaemon.DEFAULT_PORT).intValue();
+
+        // A running daemon already has a warm engine, so skip setting one up here. Grids and watch mode are only processed locally,
+        // just like runs with their own event log or caches, which the daemon's engine would not use.
+        boolean localOnly = Stream.of("grid", "event-log", "probe-cache", "no-probe-cache", "proxy-cache").anyMatch(cmd.getCmd()::hasOption);
+        if (!daemon && !watch && !cmd.getCmd().hasOption("no-daemon") && !localOnly) {
+            DaemonClient client = new DaemonClient(daemonPort);
+            if (client.isRunning()) {
+                forwardToDaemon(cmd, client, flattenType);
+                return;
+            }
+        }
+
         if (cmd.getCmd().hasOption("use-resource")) {
             FonteoAPI.initFromResource();
         } else {
@@ -189,21 +519,117 @@ public class App {
             }
         }
 
-        if (cmd.getCmd().hasOption("format") || !cmd.getCmd().hasOption("flatten-type")) {
-            FonteoAPI.processVideo(
+        if (cmd.getCmd().hasOption("no-probe-cache")) {
+            FonteoAPI.setProbeCache(null);
+        } else if (cmd.getCmd().hasOption("probe-cache")) {
+            FonteoAPI.setProbeCache(new ProbeCache(cmd.getOrCrash("probe-cache"), 256));
+        }
+
+        if (cmd.getCmd().hasOption("proxy-cache")) {
+            String folder = cmd.getCmd().getOptionValue("proxy-cache");
+            long megabytes = cmd.getOrDefaultNumber("proxy-cache-size", 10240).longValue();
+            FonteoAPI.setProxyCache(new ProxyCache(folder != null ? new File(folder) : ProxyCache.getDefaultDirectory(), megabytes * 1024 * 1024));
+        }
+
+        FonteoListener listener = new ConsoleListener();
+        if (cmd.getCmd().hasOption("event-log")) {
+            listener = FonteoListener.of(listener, new EventLogListener(cmd.getOrCrash("event-log")));
+        }
+
+        ProcessOptions processOptions = ProcessOptions.builder()
+                .engine(FonteoAPI.Engine.valueOf(cmd.getOrDefault("engine", "single_pass").toUpperCase()))
+                .parallelism(cmd.getOrDefaultNumber("parallelism", TileScheduler.availableCores()).intValue())
+                .threads(cmd.getOrDefaultNumber("threads", TileScheduler.availableCores()).intValue())
+                .segments(cmd.getOrDefaultNumber("segments", 1).intValue())
+                .sampling(FonteoAPI.Sampling.valueOf(cmd.getOrDefault("sampling", "exact").toUpperCase()))
+                .samplingTolerance(cmd.getOrDefaultNumber("sampling-tolerance", -1).doubleValue())
+                .output(FonteoAPI.OutputType.valueOf(cmd.getOrDefault("output-type", "files").toUpperCase()))
+                .encoding(EncodingProfile.preset(cmd.getOrDefault("encoding", "default")))
+                .atlasSize(cmd.getOrDefaultNumber("atlas-size", 4096).intValue())
+                .compressionLevel(cmd.getOrDefaultNumber("compression-level", 0).intValue())
+                .storeCodec(TileStore.Codec.valueOf(cmd.getOrDefault("store-codec", "raw").toUpperCase()))
+                .fontNamespace(cmd.getOrDefault("font-namespace", "fonteo"))
+                .packFormat(cmd.getOrDefaultNumber("pack-format", 15).intValue())
+                .deduplicate(cmd.getCmd().hasOption("dedup"))
+                .selection(TileSelection.builder()
+                        .tiles(cmd.getCmd().hasOption("tiles") ? TileSelection.parseTiles(cmd.getOrCrash("tiles")) : null)
+                        .firstFrame(cmd.getOrDefaultNumber("start-frame", 1).intValue())
+                        .lastFrame(cmd.getOrDefaultNumber("end-frame", -1).intValue())
+                        .startSeconds(cmd.getOrDefaultNumber("start-time", -1).doubleValue())
+                        .endSeconds(cmd.getOrDefaultNumber("end-time", -1).doubleValue())
+                        .build())
+                .listener(listener)
+                .build();
+
+        if (daemon) {
+            FonteoDaemon fonteoDaemon = new FonteoDaemon(
+                    FonteoAPI.getInstance(),
+                    daemonPort,
+                    cmd.getOrDefaultNumber("max-jobs", processOptions.getParallelism()).intValue(),
+                    processOptions.getParallelism(),
+                    processOptions.getThreads()
+            );
+            Runtime.getRuntime().addShutdownHook(new Thread(fonteoDaemon::close));
+            fonteoDaemon.start();
+
+            System.out.println("Listening on 127.0.0.1:" + fonteoDaemon.getPort());
+            fonteoDaemon.join();
+            return;
+        }
+
+        if (watch) {
+            List<File> folders = new ArrayList<>();
+            for (String folder : cmd.getCmd().getOptionValues("watch")) {
+                folders.add(new File(folder));
+            }
+
+            FolderWatcher watcher = FolderWatcher.builder()
+                    .fonteo(FonteoAPI.getInstance())
+                    .inputs(folders)
+                    .output(cmd.getOrCrash("output"))
+                    .format(cmd.getOrDefault("format", "%x-%y-%d"))
+                    .extension(cmd.getOrDefault("extension", "png"))
+                    .fps(cmd.getOrDefaultNumber("fps", 20).intValue())
+                    .width(cmd.getOrDefaultNumber("width", 765).intValue())
+                    .height(cmd.getOrDefaultNumber("height", 510).intValue())
+                    .columns(cmd.getOrDefaultNumber("columns", 3).intValue())
+                    .rows(cmd.getOrDefaultNumber("rows", 2).intValue())
+                    .flattenType(flattenType)
+                    .options(processOptions)
+                    .workers(cmd.getOrDefaultNumber("max-jobs", processOptions.getParallelism()).intValue())
+                    .debounceMillis(cmd.getOrDefaultNumber("debounce", FolderWatcher.DEFAULT_DEBOUNCE_MILLIS).longValue())
+                    .build();
+            Runtime.getRuntime().addShutdownHook(new Thread(watcher::close));
+            watcher.start();
+            watcher.join();
+            return;
+        }
+
+        if (cmd.getCmd().hasOption("grid")) {
+            List<GridSpec> grids = new ArrayList<>();
+            for (String grid : cmd.getCmd().getOptionValues("grid")) {
+                grids.add(GridSpec.parse(grid, cmd.getOrCrash("output"), cmd.getOrDefaultNumber("fps", 20).intValue(), flattenType));
+            }
+
+            FonteoAPI.processGrids(
                     cmd.getOrCrash("input"),
-                    cmd.getOrCrash("output"),
                     cmd.getOrDefault("format", "%x-%y-%d"),
                     cmd.getOrDefault("extension", "png"),
-                    cmd.getOrDefaultNumber("fps", 20).intValue(),
-                    cmd.getOrDefaultNumber("width", 765).intValue(),
-                    cmd.getOrDefaultNumber("height", 510).intValue(),
-                    cmd.getOrDefaultNumber("columns", 3).intValue(),
-                    cmd.getOrDefaultNumber("rows", 2).intValue()
+                    grids,
+                    processOptions
             );
-        } else {
-            FonteoAPI.processVideo(
-                    cmd.getOrCrash("input"),
+            return;
+        }
+
+        if (cmd.getCmd().hasOption("batch")) {
+            List<File> videos = BatchProcessor.findVideos(Arrays.asList(cmd.getCmd().getOptionValues("batch")));
+
+            if (cmd.getCmd().hasOption("input")) {
+                videos.add(cmd.getOrCrash("input"));
+            }
+
+            BatchProcessor.process(
+                    videos,
                     cmd.getOrCrash("output"),
                     cmd.getOrDefault("format", "%x-%y-%d"),
                     cmd.getOrDefault("extension", "png"),
@@ -212,9 +638,83 @@ public class App {
                     cmd.getOrDefaultNumber("height", 510).intValue(),
                     cmd.getOrDefaultNumber("columns", 3).intValue(),
                     cmd.getOrDefaultNumber("rows", 2).intValue(),
-                    FonteoAPI.FlattenVideoType.valueOf(cmd.getOrDefault("flatten-type", "simple").toUpperCase())
-            );
+                    flattenType,
+                    processOptions
+            ).print(System.out);
+            return;
         }
+
+        FonteoAPI.processVideo(
+                cmd.getOrCrash("input"),
+                cmd.getOrCrash("output"),
+                cmd.getOrDefault("format", "%x-%y-%d"),
+                cmd.getOrDefault("extension", "png"),
+                cmd.getOrDefaultNumber("fps", 20).intValue(),
+                cmd.getOrDefaultNumber("width", 765).intValue(),
+                cmd.getOrDefaultNumber("height", 510).intValue(),
+                cmd.getOrDefaultNumber("columns", 3).intValue(),
+                cmd.getOrDefaultNumber("rows", 2).intValue(),
+                flattenType,
+                processOptions
+        );
+    }
+
+    private static void forwardToDaemon(ExpandedCommandLine cmd, DaemonClient client, FonteoAPI.FlattenVideoType flattenType) throws IOException {
+        List<String> videos = new ArrayList<>();
+        if (cmd.getCmd().hasOption("batch")) {
+            for (File video : BatchProcessor.findVideos(Arrays.asList(cmd.getCmd().getOptionValues("batch")))) {
+                videos.add(video.getAbsolutePath());
+            }
+        }
+        if (cmd.getCmd().hasOption("input")) {
+            videos.add(cmd.<File>getOrCrash("input").getAbsolutePath());
+        }
+
+        JobRequest request = JobRequest.builder()
+                .videos(videos)
+                .batch(cmd.getCmd().hasOption("batch"))
+                .output(cmd.<File>getOrCrash("output").getAbsolutePath())
+                .format(cmd.getOrDefault("format", "%x-%y-%d"))
+                .extension(cmd.getOrDefault("extension", "png"))
+                .fps(cmd.getOrDefaultNumber("fps", 20).intValue())
+                .width(cmd.getOrDefaultNumber("width", 765).intValue())
+                .height(cmd.getOrDefaultNumber("height", 510).intValue())
+                .columns(cmd.getOrDefaultNumber("columns", 3).intValue())
+                .rows(cmd.getOrDefaultNumber("rows", 2).intValue())
+                .flattenType(flattenType)
+                .engine(FonteoAPI.Engine.valueOf(cmd.getOrDefault("engine", "single_pass").toUpperCase()))
+                .parallelism(cmd.getOrDefaultNumber("parallelism", TileScheduler.availableCores()).intValue())
+                .segments(cmd.getOrDefaultNumber("segments", 1).intValue())
+                .sampling(FonteoAPI.Sampling.valueOf(cmd.getOrDefault("sampling", "exact").toUpperCase()))
+                .samplingTolerance(cmd.getCmd().hasOption("sampling-tolerance") ? cmd.<Number>getOrCrash("sampling-tolerance").doubleValue() : null)
+                .outputType(FonteoAPI.OutputType.valueOf(cmd.getOrDefault("output-type", "files").toUpperCase()))
+                .encoding(cmd.getOrDefault("encoding", "default"))
+                .atlasSize(cmd.getOrDefaultNumber("atlas-size", 4096).intValue())
+                .compressionLevel(cmd.getOrDefaultNumber("compression-level", 0).intValue())
+                .storeCodec(TileStore.Codec.valueOf(cmd.getOrDefault("store-codec", "raw").toUpperCase()))
+                .fontNamespace(cmd.getOrDefault("font-namespace", "fonteo"))
+                .packFormat(cmd.getOrDefaultNumber("pack-format", 15).intValue())
+                .deduplicate(cmd.getCmd().hasOption("dedup"))
+                .tiles(cmd.getCmd().hasOption("tiles") ? cmd.getOrCrash("tiles") : null)
+                .firstFrame(cmd.getCmd().hasOption("start-frame") ? cmd.<Number>getOrCrash("start-frame").intValue() : null)
+                .lastFrame(cmd.getCmd().hasOption("end-frame") ? cmd.<Number>getOrCrash("end-frame").intValue() : null)
+                .startSeconds(cmd.getCmd().hasOption("start-time") ? cmd.<Number>getOrCrash("start-time").doubleValue() : null)
+                .endSeconds(cmd.getCmd().hasOption("end-time") ? cmd.<Number>getOrCrash("end-time").doubleValue() : null)
+                .build();
+
+        String id = client.submit(request);
+        System.out.println("Submitted " + id + " to the daemon");
+
+        JsonObject job = client.streamEvents(id, event -> {
+            switch (event.get("event").getAsString()) {
+                case "tile_start" -> System.out.println("Doing: " + event.get("tile").getAsString());
+                case "progress" -> System.out.printf("%s: %.0f%%\n", event.get("tile").getAsString(), event.get("percentage").getAsDouble() * 100);
+                case "notice" -> System.out.println(event.get("message").getAsString());
+                case "job_failed" -> System.out.println("Failed to process " + event.get("video").getAsString() + ": " + event.get("error").getAsString());
+            }
+        });
+
+        System.out.println(id + ": " + job.get("state").getAsString());
     }
 
     public static void emptyMain() throws IOException, URISyntaxException {
@@ -222,21 +722,18 @@ public class App {
 
         File folder = new File(new File(App.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath()).getParentFile();
 
-        for (File file : folder.listFiles()) {
-            if (file.getName().endsWith(".mp4") || file.getName().endsWith(".mov")) {
-                FonteoAPI.processVideo(
-                        file,
-                        new File(file.getName().substring(0, file.getName().length() - 4) + "-frames"),
-                        "%x-%y-%d",
-                        "png",
-                        20,
-                        765,
-                        510,
-                        3,
-                        2,
-                        FonteoAPI.FlattenVideoType.SIMPLE
-                );
-            }
-        }
+        BatchProcessor.process(
+                BatchProcessor.findVideos(folder.getPath()),
+                new File("."),
+                "%x-%y-%d",
+                "png",
+                20,
+                765,
+                510,
+                3,
+                2,
+                FonteoAPI.FlattenVideoType.SIMPLE,
+                ProcessOptions.defaults()
+        ).print(System.out);
     }
 }